@@ -0,0 +1,68 @@
+package org.develz.crawl.tools;
+
+import java.util.Random;
+
+/**
+ * Walker/Vose alias table: after O(n) construction, draws an index with
+ * probability proportional to its weight in O(1).
+ */
+final class AliasTable {
+    private final double[] probability;
+    private final int[] alias;
+
+    /**
+     * @param weights non-negative weights with a positive sum
+     */
+    AliasTable(double[] weights) {
+        int n = weights.length;
+        this.probability = new double[n];
+        this.alias = new int[n];
+
+        double total = 0;
+        for (double weight : weights) {
+            total += weight;
+        }
+        if (n == 0 || total <= 0) {
+            throw new IllegalArgumentException("alias table needs a positive total weight");
+        }
+
+        double[] scaled = new double[n];
+        int[] small = new int[n];
+        int[] large = new int[n];
+        int smallCount = 0;
+        int largeCount = 0;
+        for (int i = 0; i < n; i++) {
+            scaled[i] = weights[i] * n / total;
+            if (scaled[i] < 1.0) {
+                small[smallCount++] = i;
+            } else {
+                large[largeCount++] = i;
+            }
+        }
+
+        while (smallCount > 0 && largeCount > 0) {
+            int less = small[--smallCount];
+            int more = large[--largeCount];
+            probability[less] = scaled[less];
+            alias[less] = more;
+            scaled[more] = (scaled[more] + scaled[less]) - 1.0;
+            if (scaled[more] < 1.0) {
+                small[smallCount++] = more;
+            } else {
+                large[largeCount++] = more;
+            }
+        }
+        // Whatever is left is 1.0 up to rounding error.
+        while (largeCount > 0) {
+            probability[large[--largeCount]] = 1.0;
+        }
+        while (smallCount > 0) {
+            probability[small[--smallCount]] = 1.0;
+        }
+    }
+
+    int sample(Random rng) {
+        int column = rng.nextInt(probability.length);
+        return rng.nextDouble() < probability[column] ? column : alias[column];
+    }
+}
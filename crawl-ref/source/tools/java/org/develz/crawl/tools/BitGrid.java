@@ -0,0 +1,416 @@
+package org.develz.crawl.tools;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Two-state level grid, one bit per cell: set for wall, clear for floor. Rows are
+ * {@code (width + 63) / 64} {@code long} words each, back to back in one array; bit
+ * {@code x & 63} of word {@code x >>> 6} of a row is column {@code x}, and the
+ * bits past the last column are always clear.
+ *
+ * Layout generators work on this form while they only deal in walls and floor,
+ * and turn it into a glyph {@link Grid} once at the end. Whole rows can then be
+ * filled, and neighbourhoods counted, 64 cells per operation.
+ *
+ * Smoothing of interior words can use {@code BitGridVectorKernel}, several words
+ * per operation. It lives in the separately compiled {@code vector} source set,
+ * which needs the incubating {@code jdk.incubator.vector} module, so it is
+ * opt-in: put its classes on the class path and run with
+ * {@code --add-modules jdk.incubator.vector}. It is loaded reflectively and only
+ * used if it matches the scalar kernel on a self-check; otherwise the scalar
+ * kernel runs.
+ */
+final class BitGrid {
+    static final String VECTOR_KERNEL = "org.develz.crawl.tools.BitGridVectorKernel";
+    /**
+     * Grids with at least this many cells are smoothed in parallel row stripes;
+     * below it the scheduling costs more than the work.
+     */
+    static final int PARALLEL_CELLS = 1 << 18;
+    /** Fewest rows a parallel stripe is given. */
+    static final int MIN_STRIPE_ROWS = 32;
+    static final InteriorKernel SCALAR_KERNEL = (words, out, stride, fromRow, toRow) -> {
+        for (int y = fromRow; y < toRow; y++) {
+            smoothInteriorRange(words, out, stride, y, 1, stride - 1);
+        }
+    };
+    private static final InteriorKernel INTERIOR_KERNEL = selectInteriorKernel();
+
+    private final int width;
+    private final int height;
+    private final int stride;
+    private final long[] words;
+    /** Valid bits of each row's last word. */
+    private final long lastMask;
+
+    /**
+     * A {@code width} x {@code height} grid, all wall if {@code wall}, else all floor.
+     */
+    BitGrid(int width, int height, boolean wall) {
+        this.width = width;
+        this.height = height;
+        this.stride = CellMask.words(width);
+        this.words = new long[stride * height];
+        this.lastMask = (width & 63) == 0 ? -1L : (1L << width) - 1;
+        fill(wall);
+    }
+
+    int width() {
+        return width;
+    }
+
+    int height() {
+        return height;
+    }
+
+    /**
+     * @throws ArrayIndexOutOfBoundsException if {@code (x, y)} is not within the grid
+     */
+    boolean isWall(int x, int y) {
+        return (words[index(x, y)] & (1L << x)) != 0;
+    }
+
+    /**
+     * @throws ArrayIndexOutOfBoundsException if {@code (x, y)} is not within the grid
+     */
+    void setWall(int x, int y) {
+        words[index(x, y)] |= 1L << x;
+    }
+
+    /**
+     * @throws ArrayIndexOutOfBoundsException if {@code (x, y)} is not within the grid
+     */
+    void setFloor(int x, int y) {
+        words[index(x, y)] &= ~(1L << x);
+    }
+
+    /**
+     * Index of the word holding cell {@code (x, y)}. Checked per coordinate: a
+     * column past the width can still land inside the array, in the row's
+     * padding bits or the next row, and would break the clear-padding invariant.
+     */
+    private int index(int x, int y) {
+        if (x < 0 || x >= width || y < 0 || y >= height) {
+            throw new ArrayIndexOutOfBoundsException("cell (" + x + ", " + y + ") is not within a " + width + " x "
+                    + height + " grid");
+        }
+        return y * stride + (x >>> 6);
+    }
+
+    /**
+     * @throws ArrayIndexOutOfBoundsException if {@code (x, y)} is not within the grid
+     */
+    void set(int x, int y, boolean wall) {
+        if (wall) {
+            setWall(x, y);
+        } else {
+            setFloor(x, y);
+        }
+    }
+
+    void fill(boolean wall) {
+        if (!wall) {
+            Arrays.fill(words, 0L);
+            return;
+        }
+        for (int row = 0; row < height; row++) {
+            int base = row * stride;
+            Arrays.fill(words, base, base + stride, -1L);
+            words[base + stride - 1] &= lastMask;
+        }
+    }
+
+    /**
+     * Set the cells of columns {@code [x0, x1)} in rows {@code [y0, y1)} to wall or
+     * floor, a word at a time. Empty ranges are ignored; a non-empty one that
+     * reaches off the grid throws, as writing its cells one by one would.
+     *
+     * @throws ArrayIndexOutOfBoundsException if the rectangle is not empty and not within the grid
+     */
+    void fillRect(int x0, int y0, int x1, int y1, boolean wall) {
+        if (x0 >= x1 || y0 >= y1) {
+            return;
+        }
+        if (x0 < 0 || y0 < 0 || x1 > width || y1 > height) {
+            throw new ArrayIndexOutOfBoundsException("rectangle [" + x0 + ", " + x1 + ") x [" + y0 + ", " + y1
+                    + ") is not within a " + width + " x " + height + " grid");
+        }
+        int firstWord = x0 >>> 6;
+        int lastWord = (x1 - 1) >>> 6;
+        long firstMask = -1L << x0;
+        long endMask = -1L >>> (63 - ((x1 - 1) & 63));
+        for (int y = y0; y < y1; y++) {
+            int base = y * stride;
+            for (int i = firstWord; i <= lastWord; i++) {
+                long mask = -1L;
+                if (i == firstWord) {
+                    mask &= firstMask;
+                }
+                if (i == lastWord) {
+                    mask &= endMask;
+                }
+                if (wall) {
+                    words[base + i] |= mask;
+                } else {
+                    words[base + i] &= ~mask;
+                }
+            }
+        }
+    }
+
+    /**
+     * The floor cells in row-major order, each as {x, y}.
+     */
+    List<int[]> floorCells() {
+        List<int[]> cells = new ArrayList<>();
+        for (int y = 0; y < height; y++) {
+            int base = y * stride;
+            for (int i = 0; i < stride; i++) {
+                long floor = ~words[base + i] & (i == stride - 1 ? lastMask : -1L);
+                while (floor != 0) {
+                    cells.add(new int[] {(i << 6) + Long.numberOfTrailingZeros(floor), y});
+                    floor &= floor - 1;
+                }
+            }
+        }
+        return cells;
+    }
+
+    /**
+     * One step of the cave smoothing rule: a cell with more than four walls among
+     * its eight neighbours becomes wall, one with fewer becomes floor, and one with
+     * exactly four keeps its state. Cells off the grid count as walls.
+     */
+    BitGrid smooth() {
+        BitGrid next = new BitGrid(width, height, false);
+        smoothInto(next);
+        return next;
+    }
+
+    /**
+     * {@link #smooth()} into {@code next}, which must be another grid of the same
+     * size; its previous contents are overwritten. Repeated smoothing can swap two
+     * grids back and forth without allocating.
+     *
+     * Words with a neighbour word on every side are read straight from the array;
+     * only the first and last rows and the first and last word of each row go
+     * through the off-grid padding.
+     *
+     * Grids of {@link #PARALLEL_CELLS} cells or more are split into horizontal
+     * stripes smoothed as common-pool tasks. A stripe writes only its own rows of
+     * {@code next} and reads one row past each end of its range from this grid,
+     * which nothing writes during the step, so stripes need no halo copies and the
+     * result is the same as the sequential one. All stripes have finished when this
+     * returns, which is the barrier between successive steps.
+     */
+    void smoothInto(BitGrid next) {
+        int stripes = (long) width * height < PARALLEL_CELLS ? 1
+                : Math.min(ForkJoinPool.getCommonPoolParallelism(), height / MIN_STRIPE_ROWS);
+        smoothInto(next, stripes);
+    }
+
+    /**
+     * {@link #smoothInto(BitGrid)} split into {@code stripes} row stripes (at most
+     * one per row) whatever the grid size; 1 or less smooths on this thread.
+     */
+    void smoothInto(BitGrid next, int stripes) {
+        if (next == this || next.width != width || next.height != height) {
+            throw new IllegalArgumentException("smoothing target must be a distinct grid of the same size");
+        }
+        long[] out = next.words;
+        int count = Math.min(stripes, height);
+        if (count < 2) {
+            smoothRows(out, 0, height);
+            return;
+        }
+        List<ForkJoinTask<?>> tasks = new ArrayList<>(count);
+        for (int stripe = 0; stripe < count; stripe++) {
+            int fromRow = (int) ((long) height * stripe / count);
+            int toRow = (int) ((long) height * (stripe + 1) / count);
+            tasks.add(ForkJoinTask.adapt(() -> smoothRows(out, fromRow, toRow)));
+        }
+        ForkJoinTask.invokeAll(tasks);
+    }
+
+    /**
+     * Smooth rows {@code [fromRow, toRow)} into {@code out}.
+     */
+    private void smoothRows(long[] out, int fromRow, int toRow) {
+        for (int y = fromRow; y < toRow; y++) {
+            boolean borderRow = y == 0 || y == height - 1;
+            for (int i = 0; i < stride; i++) {
+                if (borderRow || i == 0 || i == stride - 1) {
+                    out[y * stride + i] = smoothBorderWord(y, i);
+                }
+            }
+        }
+        INTERIOR_KERNEL.smooth(words, out, stride, Math.max(1, fromRow), Math.min(height - 1, toRow));
+    }
+
+    /**
+     * Smooth words {@code [from, to)} of interior row {@code y}, none of them the
+     * first or last word of the row.
+     */
+    static void smoothInteriorRange(long[] words, long[] out, int stride, int y, int from, int to) {
+        int centre = y * stride;
+        int north = centre - stride;
+        int south = centre + stride;
+        for (int i = from; i < to; i++) {
+            out[centre + i] = rule(
+                    (words[north + i] << 1) | (words[north + i - 1] >>> 63),
+                    words[north + i],
+                    (words[north + i] >>> 1) | (words[north + i + 1] << 63),
+                    (words[centre + i] << 1) | (words[centre + i - 1] >>> 63),
+                    words[centre + i],
+                    (words[centre + i] >>> 1) | (words[centre + i + 1] << 63),
+                    (words[south + i] << 1) | (words[south + i - 1] >>> 63),
+                    words[south + i],
+                    (words[south + i] >>> 1) | (words[south + i + 1] << 63));
+        }
+    }
+
+    private long smoothBorderWord(int y, int i) {
+        long north = padded(y - 1, i);
+        long centre = padded(y, i);
+        long south = padded(y + 1, i);
+        long word = rule(west(y - 1, i, north), north, east(y - 1, i, north),
+                west(y, i, centre), centre, east(y, i, centre),
+                west(y + 1, i, south), south, east(y + 1, i, south));
+        return i == stride - 1 ? word & lastMask : word;
+    }
+
+    /**
+     * The smoothing rule for 64 cells at once, given the masks of their eight
+     * neighbours and of the cells themselves. The neighbour masks are summed by a
+     * carry-save adder tree into a bit-sliced four-bit count.
+     */
+    private static long rule(long northWest, long north, long northEast,
+                             long westward, long centre, long eastward,
+                             long southWest, long south, long southEast) {
+        long sumA = northWest ^ north ^ northEast;
+        long carryA = majority(northWest, north, northEast);
+        long sumB = westward ^ eastward ^ southWest;
+        long carryB = majority(westward, eastward, southWest);
+        long sumC = south ^ southEast;
+        long carryC = south & southEast;
+        long ones = sumA ^ sumB ^ sumC;
+        long carryOnes = majority(sumA, sumB, sumC);
+        long sumTwos = carryA ^ carryB ^ carryC;
+        long carryTwos = majority(carryA, carryB, carryC);
+        long twos = sumTwos ^ carryOnes;
+        long carryFours = sumTwos & carryOnes;
+        long fours = carryTwos ^ carryFours;
+        long eights = carryTwos & carryFours;
+
+        long more = eights | (fours & (twos | ones));
+        long exactlyFour = fours & ~twos & ~ones;
+        return more | (exactlyFour & centre);
+    }
+
+    private static long majority(long a, long b, long c) {
+        return (a & b) | (c & (a ^ b));
+    }
+
+    private static InteriorKernel selectInteriorKernel() {
+        InteriorKernel vector;
+        try {
+            vector = (InteriorKernel) Class.forName(VECTOR_KERNEL).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError unavailable) {
+            return SCALAR_KERNEL;
+        }
+        try {
+            return agrees(vector) ? vector : SCALAR_KERNEL;
+        } catch (RuntimeException broken) {
+            return SCALAR_KERNEL;
+        }
+    }
+
+    /**
+     * Whether {@code kernel} gives the scalar kernel's words on random grids wide
+     * enough to have both full vectors and a tail in every row.
+     */
+    private static boolean agrees(InteriorKernel kernel) {
+        Random rng = new Random(0x5EED);
+        for (int stride : new int[] {3, 11, 40}) {
+            int height = 6;
+            long[] words = new long[stride * height];
+            for (int i = 0; i < words.length; i++) {
+                words[i] = rng.nextLong();
+            }
+            long[] expected = new long[words.length];
+            long[] actual = new long[words.length];
+            SCALAR_KERNEL.smooth(words, expected, stride, 1, height - 1);
+            kernel.smooth(words, actual, stride, 1, height - 1);
+            if (!Arrays.equals(expected, actual)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Word {@code i} of row {@code y}, with rows off the grid and columns past the
+     * last one reading as wall.
+     */
+    private long padded(int y, int i) {
+        if (y < 0 || y >= height || i < 0 || i >= stride) {
+            return -1L;
+        }
+        long word = words[y * stride + i];
+        return i == stride - 1 ? word | ~lastMask : word;
+    }
+
+    /**
+     * For each cell of word {@code i} of row {@code y}, the state of its west neighbour.
+     */
+    private long west(int y, int i, long word) {
+        return (word << 1) | (padded(y, i - 1) >>> 63);
+    }
+
+    /**
+     * For each cell of word {@code i} of row {@code y}, the state of its east neighbour.
+     */
+    private long east(int y, int i, long word) {
+        return (word >>> 1) | (padded(y, i + 1) << 63);
+    }
+
+    /**
+     * The glyph grid for this one, {@code wall} for set cells and {@code floor} for
+     * clear ones; both must be ASCII.
+     */
+    Grid toGrid(char wall, char floor) {
+        if (wall >= 0x80 || floor >= 0x80) {
+            throw new IllegalArgumentException("wall and floor glyphs must be ASCII");
+        }
+        Grid grid = new Grid(width, height, floor);
+        byte[] cells = grid.cells();
+        byte wallCode = (byte) wall;
+        for (int y = 0; y < height; y++) {
+            int base = y * stride;
+            int offset = y * width;
+            for (int i = 0; i < stride; i++) {
+                long bits = words[base + i];
+                while (bits != 0) {
+                    cells[offset + (i << 6) + Long.numberOfTrailingZeros(bits)] = wallCode;
+                    bits &= bits - 1;
+                }
+            }
+        }
+        return grid;
+    }
+
+    /**
+     * Smooths interior words: every word of rows {@code [fromRow, toRow)} except
+     * the first and last of its row, reading {@code words} and writing the same
+     * positions of {@code out}. The rows must not include the first or last row of
+     * the grid.
+     */
+    interface InteriorKernel {
+        void smooth(long[] words, long[] out, int stride, int fromRow, int toRow);
+    }
+}
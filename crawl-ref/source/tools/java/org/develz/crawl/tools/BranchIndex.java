@@ -0,0 +1,81 @@
+package org.develz.crawl.tools;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Inverted index from branch code to the ids (library positions) of the maps
+ * that may be placed in that branch.
+ *
+ * A map matches a branch code when one of its place hints equals the code
+ * (ignoring case), or when it comes from a file under branches/ whose relative
+ * path contains the code. Hint postings are built up front; the path rule is
+ * evaluated once per source file rather than once per map, and each distinct
+ * code's answer is memoised.
+ */
+final class BranchIndex {
+    private final int mapCount;
+    private final Map<String, int[]> hintPostings;
+    private final List<String> branchFiles;
+    private final List<int[]> branchFileMaps;
+    private final Map<String, BitSet> setsByCode = new ConcurrentHashMap<>();
+
+    BranchIndex(List<MapDefinition> maps) {
+        this.mapCount = maps.size();
+        Map<String, BitSet> hints = new HashMap<>();
+        Map<String, BitSet> files = new HashMap<>();
+        List<String> fileOrder = new ArrayList<>();
+        for (int id = 0; id < maps.size(); id++) {
+            MapDefinition map = maps.get(id);
+            for (String hint : map.placeHints()) {
+                hints.computeIfAbsent(hint.toUpperCase(), key -> new BitSet()).set(id);
+            }
+            String lowerSource = map.relativeSource().toLowerCase();
+            if (lowerSource.contains("branches/")) {
+                files.computeIfAbsent(lowerSource, key -> {
+                    fileOrder.add(key);
+                    return new BitSet();
+                }).set(id);
+            }
+        }
+
+        this.hintPostings = new HashMap<>();
+        hints.forEach((hint, ids) -> hintPostings.put(hint, ids.stream().toArray()));
+        this.branchFiles = fileOrder;
+        this.branchFileMaps = new ArrayList<>(fileOrder.size());
+        for (String file : fileOrder) {
+            branchFileMaps.add(files.get(file).stream().toArray());
+        }
+    }
+
+    /**
+     * Ids of the maps matching {@code branchCode}, as a bitset over ids for
+     * combining with other filters. Shared; do not modify.
+     */
+    BitSet setFor(String branchCode) {
+        return setsByCode.computeIfAbsent(branchCode, this::resolve);
+    }
+
+    private BitSet resolve(String branchCode) {
+        BitSet ids = new BitSet(mapCount);
+        int[] hinted = hintPostings.get(branchCode.toUpperCase());
+        if (hinted != null) {
+            for (int id : hinted) {
+                ids.set(id);
+            }
+        }
+        String lowerCode = branchCode.toLowerCase();
+        for (int i = 0; i < branchFiles.size(); i++) {
+            if (branchFiles.get(i).contains(lowerCode)) {
+                for (int id : branchFileMaps.get(i)) {
+                    ids.set(id);
+                }
+            }
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,43 @@
+package org.develz.crawl.tools;
+
+import java.util.Arrays;
+
+/**
+ * Mutable bit-per-cell mask over a level, one {@code long} per 64 columns of
+ * each row.
+ */
+final class CellMask {
+    private final long[][] rows;
+    private final int width;
+
+    CellMask(int width, int height) {
+        this.width = width;
+        this.rows = new long[height][words(width)];
+    }
+
+    static int words(int width) {
+        return (width + 63) >>> 6;
+    }
+
+    int width() {
+        return width;
+    }
+
+    int height() {
+        return rows.length;
+    }
+
+    boolean get(int x, int y) {
+        return (rows[y][x >>> 6] & (1L << x)) != 0;
+    }
+
+    void set(int x, int y) {
+        rows[y][x >>> 6] |= 1L << x;
+    }
+
+    void clearAll() {
+        for (long[] row : rows) {
+            Arrays.fill(row, 0L);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package org.develz.crawl.tools;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.ToIntFunction;
+
+/**
+ * A WEIGHT: or CHANCE: value that may depend on where the map is placed, e.g.
+ * {@code 10 (Lair, Elf), 0 (Snake), 5}. The first entry whose depth condition
+ * matches wins; otherwise the first unconditional entry applies.
+ */
+final class ConditionalValue {
+    static final ConditionalValue NONE = new ConditionalValue(new int[0], new DepthRanges[0]);
+
+    private final int[] values;
+    private final DepthRanges[] conditions;
+
+    private ConditionalValue(int[] values, DepthRanges[] conditions) {
+        this.values = values;
+        this.conditions = conditions;
+    }
+
+    /**
+     * @param valueParser converts one value to an int, returning a negative number if it is malformed
+     */
+    static ConditionalValue parse(String text, ToIntFunction<String> valueParser) {
+        List<Integer> parsedValues = new ArrayList<>();
+        List<DepthRanges> parsedConditions = new ArrayList<>();
+        for (String entry : splitTopLevel(text)) {
+            String value = entry;
+            DepthRanges condition = null;
+            int open = entry.indexOf('(');
+            if (open >= 0) {
+                int close = entry.indexOf(')', open);
+                value = entry.substring(0, open);
+                condition = DepthRanges.parse(entry.substring(open + 1, close < 0 ? entry.length() : close));
+                if (condition.isEmpty()) {
+                    continue;
+                }
+            }
+            int parsed = valueParser.applyAsInt(value.trim());
+            if (parsed < 0) {
+                continue;
+            }
+            parsedValues.add(parsed);
+            parsedConditions.add(condition);
+        }
+        if (parsedValues.isEmpty()) {
+            return NONE;
+        }
+        int[] valueArray = new int[parsedValues.size()];
+        for (int i = 0; i < valueArray.length; i++) {
+            valueArray[i] = parsedValues.get(i);
+        }
+        return new ConditionalValue(valueArray, parsedConditions.toArray(new DepthRanges[0]));
+    }
+
+    /**
+     * Commas inside a parenthesised condition do not separate entries.
+     */
+    private static List<String> splitTopLevel(String text) {
+        List<String> entries = new ArrayList<>();
+        int nesting = 0;
+        int start = 0;
+        for (int i = 0; i <= text.length(); i++) {
+            char c = i < text.length() ? text.charAt(i) : ',';
+            if (c == '(') {
+                nesting++;
+            } else if (c == ')') {
+                nesting = Math.max(0, nesting - 1);
+            } else if (c == ',' && (nesting == 0 || i == text.length())) {
+                String entry = text.substring(start, Math.min(i, text.length())).trim();
+                if (!entry.isEmpty()) {
+                    entries.add(entry);
+                }
+                start = i + 1;
+            }
+        }
+        return entries;
+    }
+
+    boolean isEmpty() {
+        return values.length == 0;
+    }
+
+    int valueAt(String branch, int depth, int fallback) {
+        int unconditional = -1;
+        for (int i = 0; i < values.length; i++) {
+            if (conditions[i] == null) {
+                if (unconditional < 0) {
+                    unconditional = values[i];
+                }
+            } else if (conditions[i].matches(branch, depth)) {
+                return values[i];
+            }
+        }
+        return unconditional >= 0 ? unconditional : fallback;
+    }
+
+    void write(DataOutput out) throws IOException {
+        out.writeInt(values.length);
+        for (int i = 0; i < values.length; i++) {
+            out.writeInt(values[i]);
+            out.writeBoolean(conditions[i] != null);
+            if (conditions[i] != null) {
+                conditions[i].write(out);
+            }
+        }
+    }
+
+    static ConditionalValue read(DataInput in) throws IOException {
+        int count = in.readInt();
+        if (count == 0) {
+            return NONE;
+        }
+        int[] values = new int[count];
+        DepthRanges[] conditions = new DepthRanges[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = in.readInt();
+            conditions[i] = in.readBoolean() ? DepthRanges.read(in) : null;
+        }
+        return new ConditionalValue(values, conditions);
+    }
+}
@@ -0,0 +1,63 @@
+package org.develz.crawl.tools;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-branch, per-level table of the maps whose DEPTH: allows them there.
+ *
+ * Every level of every branch in branch-data.h is resolved when the library is
+ * loaded, so looking up the eligible maps for a (branch, level) is a hash lookup
+ * and an array index. Unknown branches are resolved on first use and memoised.
+ * Maps without any depth information are eligible everywhere.
+ */
+final class DepthIndex {
+    private final List<MapDefinition> maps;
+    private final BitSet unrestricted;
+    private final Map<String, BitSet[]> byBranch = new ConcurrentHashMap<>();
+
+    DepthIndex(List<MapDefinition> maps) {
+        this.maps = maps;
+        this.unrestricted = new BitSet(maps.size());
+        for (int id = 0; id < maps.size(); id++) {
+            if (!maps.get(id).directives().hasDepths()) {
+                unrestricted.set(id);
+            }
+        }
+        for (String branch : DepthRanges.knownBranches()) {
+            byBranch.put(branch, resolve(branch));
+        }
+    }
+
+    /**
+     * Clamp {@code depth} to the levels that exist in {@code branch}.
+     */
+    static int level(String branch, int depth) {
+        return Math.max(1, Math.min(depth, DepthRanges.levels(branch)));
+    }
+
+    /**
+     * Ids of the maps allowed on level {@link #level(String, int)} of {@code branch}
+     * (upper-cased). The set is shared and must not be modified.
+     */
+    BitSet eligible(String branch, int depth) {
+        return byBranch.computeIfAbsent(branch, this::resolve)[level(branch, depth) - 1];
+    }
+
+    private BitSet[] resolve(String branch) {
+        BitSet[] levels = new BitSet[DepthRanges.levels(branch)];
+        for (int level = 1; level <= levels.length; level++) {
+            BitSet ids = (BitSet) unrestricted.clone();
+            for (int id = 0; id < maps.size(); id++) {
+                MapDirectives directives = maps.get(id).directives();
+                if (directives.hasDepths() && directives.depths().matches(branch, level)) {
+                    ids.set(id);
+                }
+            }
+            levels[level - 1] = ids;
+        }
+        return levels;
+    }
+}
@@ -0,0 +1,241 @@
+package org.develz.crawl.tools;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compact form of a DEPTH: directive, or of the depth condition in parentheses
+ * on a WEIGHT: or CHANCE: entry, e.g. {@code D:2-, !D:$, Depths:2-}.
+ *
+ * Each comma-separated entry allows or (with a leading '!') denies a level range
+ * in one branch; a bare range such as {@code 1-50} applies to every branch and a
+ * bare branch name to all of its levels. '$' stands for the branch's last level.
+ * A level matches when some allow entry covers it and no deny entry does.
+ * Entries that cannot be parsed are ignored.
+ */
+final class DepthRanges {
+    static final DepthRanges NONE = new DepthRanges(new String[0], new int[0], new int[0], new boolean[0]);
+
+    /** Branch used when a level is simulated without one. */
+    static final String DEFAULT_BRANCH = "D";
+
+    private static final int LAST = -1;
+    private static final int OPEN = Integer.MAX_VALUE;
+
+    /** Number of levels per branch, keyed by upper-cased abbreviation (see branch-data.h). */
+    private static final Map<String, Integer> BRANCH_LEVELS = branchLevels();
+
+    private final String[] branches;
+    private final int[] low;
+    private final int[] high;
+    private final boolean[] deny;
+
+    private DepthRanges(String[] branches, int[] low, int[] high, boolean[] deny) {
+        this.branches = branches;
+        this.low = low;
+        this.high = high;
+        this.deny = deny;
+    }
+
+    static DepthRanges parse(String text) {
+        List<String> branchList = new ArrayList<>();
+        List<int[]> ranges = new ArrayList<>();
+        List<Boolean> denyList = new ArrayList<>();
+        for (String raw : text.split(",")) {
+            String entry = raw.trim();
+            boolean denied = entry.startsWith("!");
+            if (denied) {
+                entry = entry.substring(1).trim();
+            }
+            if (entry.isEmpty()) {
+                continue;
+            }
+            String branch;
+            String spec;
+            int colon = entry.indexOf(':');
+            if (colon >= 0) {
+                branch = entry.substring(0, colon).trim();
+                spec = entry.substring(colon + 1).trim();
+            } else if (Character.isDigit(entry.charAt(0)) || entry.charAt(0) == '$' || entry.charAt(0) == '-') {
+                branch = null;
+                spec = entry;
+            } else {
+                branch = entry;
+                spec = "";
+            }
+            int[] range = parseRange(spec);
+            if (range == null || (branch != null && branch.isEmpty())) {
+                continue;
+            }
+            branchList.add(branch == null ? null : branch.toUpperCase());
+            ranges.add(range);
+            denyList.add(denied);
+        }
+        if (ranges.isEmpty()) {
+            return NONE;
+        }
+        int count = ranges.size();
+        int[] lows = new int[count];
+        int[] highs = new int[count];
+        boolean[] denies = new boolean[count];
+        for (int i = 0; i < count; i++) {
+            lows[i] = ranges.get(i)[0];
+            highs[i] = ranges.get(i)[1];
+            denies[i] = denyList.get(i);
+        }
+        return new DepthRanges(branchList.toArray(new String[0]), lows, highs, denies);
+    }
+
+    /**
+     * Parse "", "N", "$", "N-", "-M", "N-M" or "N-$" into {low, high}; null if malformed.
+     */
+    private static int[] parseRange(String spec) {
+        if (spec.isEmpty()) {
+            return new int[] {1, OPEN};
+        }
+        int dash = spec.indexOf('-');
+        if (dash < 0) {
+            int level = parseLevel(spec);
+            return level == 0 ? null : new int[] {level, level};
+        }
+        String from = spec.substring(0, dash).trim();
+        String to = spec.substring(dash + 1).trim();
+        int lowLevel = from.isEmpty() ? 1 : parseLevel(from);
+        int highLevel = to.isEmpty() ? OPEN : parseLevel(to);
+        return lowLevel == 0 || highLevel == 0 ? null : new int[] {lowLevel, highLevel};
+    }
+
+    private static int parseLevel(String text) {
+        if (text.equals("$")) {
+            return LAST;
+        }
+        try {
+            int level = Integer.parseInt(text);
+            return level > 0 ? level : 0;
+        } catch (NumberFormatException malformed) {
+            return 0;
+        }
+    }
+
+    boolean isEmpty() {
+        return low.length == 0;
+    }
+
+    /**
+     * @param branch upper-cased branch abbreviation
+     */
+    boolean matches(String branch, int depth) {
+        int last = levels(branch);
+        boolean allowed = false;
+        for (int i = 0; i < low.length; i++) {
+            if (branches[i] != null && !branches[i].equals(branch)) {
+                continue;
+            }
+            int from = low[i] == LAST ? last : low[i];
+            int to = high[i] == LAST ? last : high[i];
+            if (depth < from || depth > to) {
+                continue;
+            }
+            if (deny[i]) {
+                return false;
+            }
+            allowed = true;
+        }
+        return allowed;
+    }
+
+    /**
+     * Number of levels in {@code branch}; branches this tool does not know about
+     * are treated as single-level.
+     */
+    static int levels(String branch) {
+        return BRANCH_LEVELS.getOrDefault(branch, 1);
+    }
+
+    /**
+     * Upper-cased abbreviations of the branches in branch-data.h, in game order.
+     */
+    static Set<String> knownBranches() {
+        return BRANCH_LEVELS.keySet();
+    }
+
+    void write(DataOutput out) throws IOException {
+        out.writeInt(low.length);
+        for (int i = 0; i < low.length; i++) {
+            out.writeUTF(branches[i] == null ? "" : branches[i]);
+            out.writeInt(low[i]);
+            out.writeInt(high[i]);
+            out.writeBoolean(deny[i]);
+        }
+    }
+
+    static DepthRanges read(DataInput in) throws IOException {
+        int count = in.readInt();
+        if (count == 0) {
+            return NONE;
+        }
+        String[] branches = new String[count];
+        int[] low = new int[count];
+        int[] high = new int[count];
+        boolean[] deny = new boolean[count];
+        for (int i = 0; i < count; i++) {
+            String branch = in.readUTF();
+            branches[i] = branch.isEmpty() ? null : branch;
+            low[i] = in.readInt();
+            high[i] = in.readInt();
+            deny[i] = in.readBoolean();
+        }
+        return new DepthRanges(branches, low, high, deny);
+    }
+
+    private static Map<String, Integer> branchLevels() {
+        Map<String, Integer> levels = new LinkedHashMap<>();
+        levels.put("D", 15);
+        levels.put("TEMPLE", 1);
+        levels.put("ORC", 2);
+        levels.put("ELF", 3);
+        levels.put("LAIR", 5);
+        levels.put("SWAMP", 4);
+        levels.put("SHOALS", 4);
+        levels.put("SNAKE", 4);
+        levels.put("SPIDER", 4);
+        levels.put("SLIME", 5);
+        levels.put("VAULTS", 5);
+        levels.put("BLADE", 1);
+        levels.put("CRYPT", 3);
+        levels.put("TOMB", 3);
+        levels.put("DEPTHS", 4);
+        levels.put("HELL", 1);
+        levels.put("DIS", 7);
+        levels.put("GEH", 7);
+        levels.put("COC", 7);
+        levels.put("TAR", 7);
+        levels.put("ZOT", 5);
+        levels.put("FOREST", 5);
+        levels.put("ABYSS", 7);
+        levels.put("PAN", 1);
+        levels.put("ZIG", 27);
+        levels.put("LAB", 1);
+        levels.put("BAZAAR", 1);
+        levels.put("TROVE", 1);
+        levels.put("SEWER", 1);
+        levels.put("OSSUARY", 1);
+        levels.put("BAILEY", 1);
+        levels.put("GAUNTLET", 1);
+        levels.put("ICECV", 1);
+        levels.put("VOLCANO", 1);
+        levels.put("WIZLAB", 1);
+        levels.put("DESOLATION", 1);
+        levels.put("ARENA", 1);
+        levels.put("CRUCIBLE", 1);
+        levels.put("NECROPOLIS", 1);
+        return Collections.unmodifiableMap(levels);
+    }
+}
@@ -0,0 +1,329 @@
+package org.develz.crawl.tools;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32C;
+
+/**
+ * Streaming, regex-free tokenizer for .des files.
+ *
+ * The file is scanned once as raw bytes. Each line is trimmed by index and
+ * recognised with prefix checks: NAME:, PLACE: (case-insensitive), MAP, ENDMAP
+ * and any number of place("...") calls, plus the selection directives DEPTH:,
+ * default-depth:, WEIGHT:, CHANCE:, TAGS: and ORIENT: between maps. Selection
+ * directives belong to the map being declared: they are reset at each NAME: and
+ * ENDMAP, while default-depth: holds for the rest of the file.
+ *
+ * Strings are only created for directive values and, in eager mode, for the MAP
+ * rows that end up in a {@link MapDefinition}; lines that are merely scanned
+ * never allocate. Rows go through a {@link RowInterner}, so identical rows
+ * anywhere in the library share a single String.
+ */
+final class DesParser {
+    private final Path desFile;
+    private final String relativeSource;
+    private final byte[] data;
+    private final MappedDesFile lazyFile;
+    private final RowInterner rowInterner;
+    /** Identical DEPTH: texts are common within a file; share their parsed form. */
+    private final Map<String, DepthRanges> depthRanges = new HashMap<>();
+
+    private DesParser(Path desFile, String relativeSource, byte[] data, MappedDesFile lazyFile,
+                      RowInterner rowInterner) {
+        this.desFile = desFile;
+        this.relativeSource = relativeSource;
+        this.data = data;
+        this.lazyFile = lazyFile;
+        this.rowInterner = rowInterner;
+    }
+
+    /**
+     * Parse {@code desFile}. With {@code lazy} set, MAP rows are not decoded; each
+     * map only records its dimensions and the byte range of its body. Otherwise
+     * rows are canonicalised through {@code rowInterner}.
+     */
+    static List<MapDefinition> parse(Path desRoot, Path desFile, boolean lazy,
+                                     RowInterner rowInterner) throws IOException {
+        String relativeSource = VaultLibraryCache.relativeName(desRoot, desFile);
+        long modified = lazy ? Files.getLastModifiedTime(desFile).toMillis() : 0L;
+        byte[] data = Files.readAllBytes(desFile);
+        MappedDesFile lazyFile = null;
+        if (lazy) {
+            CRC32C crc = new CRC32C();
+            crc.update(data);
+            lazyFile = new MappedDesFile(desFile, relativeSource, data.length, modified, crc.getValue());
+        }
+        return new DesParser(desFile, relativeSource, data, lazyFile, rowInterner).parse();
+    }
+
+    /**
+     * Parse {@code data}, the current contents of {@code desFile}, with rows decoded
+     * and not shared with any library.
+     */
+    static List<MapDefinition> parse(Path desFile, String relativeSource, byte[] data) {
+        return new DesParser(desFile, relativeSource, data, null, new RowInterner()).parse();
+    }
+
+    private List<MapDefinition> parse() {
+        List<MapDefinition> maps = new ArrayList<>();
+        boolean inMap = false;
+        List<String> buffer = null;
+        int bodyStart = 0;
+        int bodyEnd = 0;
+        int bodyHeight = 0;
+        int bodyWidth = 0;
+        String currentName = null;
+        int anonymousCount = 0;
+        Set<String> placeHints = new LinkedHashSet<>();
+        // Hints only accumulate within a file, so maps share a snapshot until it grows.
+        Set<String> hintSnapshot = new LinkedHashSet<>();
+        DepthRanges defaultDepths = DepthRanges.NONE;
+        String depthText = null;
+        String weightText = null;
+        String chanceText = null;
+        String orientText = null;
+        Set<String> tags = new LinkedHashSet<>();
+
+        int limit = data.length;
+        int pos = 0;
+        while (pos < limit) {
+            int lineStart = pos;
+            int lineEnd = pos;
+            while (lineEnd < limit && data[lineEnd] != '\n' && data[lineEnd] != '\r') {
+                lineEnd++;
+            }
+            pos = lineEnd + 1;
+            if (lineEnd < limit && data[lineEnd] == '\r' && pos < limit && data[pos] == '\n') {
+                pos++;
+            }
+
+            int start = lineStart;
+            int end = lineEnd;
+            while (start < end && (data[start] & 0xff) <= ' ') {
+                start++;
+            }
+            while (end > start && (data[end - 1] & 0xff) <= ' ') {
+                end--;
+            }
+
+            if (startsWith(start, end, "NAME:")) {
+                currentName = decode(start + "NAME:".length(), end).trim();
+                depthText = null;
+                weightText = null;
+                chanceText = null;
+                orientText = null;
+                tags.clear();
+            }
+            if (startsWithIgnoreCase(start, end, "PLACE:")) {
+                collectPlaceDirective(placeHints, start + "PLACE:".length(), end);
+            }
+            collectPlaceCalls(placeHints, start, end);
+
+            if (!inMap) {
+                if (startsWith(start, end, "DEPTH:")) {
+                    String value = decode(start + "DEPTH:".length(), end).trim();
+                    depthText = depthText == null ? value : depthText + "," + value;
+                } else if (startsWith(start, end, "default-depth:")) {
+                    defaultDepths = depthRanges(decode(start + "default-depth:".length(), end).trim());
+                } else if (startsWith(start, end, "WEIGHT:")) {
+                    weightText = decode(start + "WEIGHT:".length(), end).trim();
+                } else if (startsWith(start, end, "CHANCE:")) {
+                    chanceText = decode(start + "CHANCE:".length(), end).trim();
+                } else if (startsWith(start, end, "ORIENT:")) {
+                    orientText = decode(start + "ORIENT:".length(), end).trim();
+                } else if (startsWith(start, end, "TAGS:")) {
+                    collectTags(tags, start + "TAGS:".length(), end);
+                }
+            }
+
+            if (startsWith(start, end, "MAP")) {
+                inMap = true;
+                buffer = lazyFile == null ? new ArrayList<>() : null;
+                bodyHeight = 0;
+                bodyWidth = 0;
+                continue;
+            }
+            if (startsWith(start, end, "ENDMAP")) {
+                if (inMap) {
+                    String name = currentName != null ? currentName : "anonymous-" + (++anonymousCount);
+                    int bodyLength = bodyHeight > 0 ? bodyEnd - bodyStart : 0;
+                    if (hintSnapshot.size() != placeHints.size()) {
+                        hintSnapshot = new LinkedHashSet<>(placeHints);
+                    }
+                    MapDirectives directives = MapDirectives.of(
+                            depthText != null ? depthRanges(depthText) : defaultDepths,
+                            weightText, chanceText, tags, orientText);
+                    maps.add(new MapDefinition(name, desFile, relativeSource, maps.size(), hintSnapshot, directives,
+                            bodyWidth, bodyHeight, lazyFile, bodyHeight > 0 ? bodyStart : 0, bodyLength,
+                            buffer));
+                }
+                inMap = false;
+                buffer = null;
+                currentName = null;
+                depthText = null;
+                weightText = null;
+                chanceText = null;
+                orientText = null;
+                tags.clear();
+                continue;
+            }
+            if (inMap) {
+                if (bodyHeight == 0) {
+                    bodyStart = lineStart;
+                }
+                bodyEnd = lineEnd;
+                bodyHeight++;
+                bodyWidth = Math.max(bodyWidth, charLength(lineStart, lineEnd));
+                if (buffer != null) {
+                    buffer.add(rowInterner.intern(data, lineStart, lineEnd));
+                }
+            }
+        }
+
+        return maps;
+    }
+
+    /**
+     * Equivalent of matching {@code ^PLACE:\s*(.+)$} and splitting the group on commas.
+     */
+    private void collectPlaceDirective(Set<String> placeHints, int from, int end) {
+        while (from < end && isRegexSpace(data[from])) {
+            from++;
+        }
+        int tokenStart = from;
+        for (int i = from; i <= end; i++) {
+            if (i == end || data[i] == ',') {
+                if (i > tokenStart) {
+                    collectPlaceHints(placeHints, decode(tokenStart, i));
+                }
+                tokenStart = i + 1;
+            }
+        }
+    }
+
+    /**
+     * Equivalent of repeatedly finding {@code place\("([^"]+)"} (case-insensitive).
+     */
+    private void collectPlaceCalls(Set<String> placeHints, int start, int end) {
+        int i = start;
+        while (i + "place(\"".length() < end) {
+            if ((data[i] | 0x20) != 'p' || !startsWithIgnoreCase(i, end, "place(\"")) {
+                i++;
+                continue;
+            }
+            int valueStart = i + "place(\"".length();
+            int close = valueStart;
+            while (close < end && data[close] != '"') {
+                close++;
+            }
+            if (close == end) {
+                return;
+            }
+            if (close == valueStart) {
+                i++;
+                continue;
+            }
+            collectPlaceHints(placeHints, decode(valueStart, close));
+            i = close + 1;
+        }
+    }
+
+    private DepthRanges depthRanges(String text) {
+        return depthRanges.computeIfAbsent(text, DepthRanges::parse);
+    }
+
+    /**
+     * TAGS: values are separated by spaces and may be spread over several lines.
+     */
+    private void collectTags(Set<String> tags, int from, int end) {
+        int tokenStart = -1;
+        for (int i = from; i <= end; i++) {
+            if (i == end || (data[i] & 0xff) <= ' ') {
+                if (tokenStart >= 0) {
+                    tags.add(decode(tokenStart, i));
+                    tokenStart = -1;
+                }
+            } else if (tokenStart < 0) {
+                tokenStart = i;
+            }
+        }
+    }
+
+    private static void collectPlaceHints(Set<String> placeHints, String token) {
+        String cleaned = token.trim();
+        if (cleaned.isEmpty()) {
+            return;
+        }
+        String upper = cleaned.toUpperCase();
+        placeHints.add(upper);
+        int colon = upper.indexOf(':');
+        if (colon > 0) {
+            placeHints.add(upper.substring(0, colon));
+        }
+    }
+
+    private boolean startsWith(int start, int end, String prefix) {
+        int length = prefix.length();
+        if (end - start < length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (data[start + i] != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * ASCII-only case-insensitive prefix check, matching {@code Pattern.CASE_INSENSITIVE}.
+     */
+    private boolean startsWithIgnoreCase(int start, int end, String prefix) {
+        int length = prefix.length();
+        if (end - start < length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            int b = data[start + i];
+            int c = prefix.charAt(i);
+            if (b != c && !(isAsciiLetter(c) && (b | 0x20) == (c | 0x20))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isAsciiLetter(int c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static boolean isRegexSpace(byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == 0x0b || b == '\f' || b == '\r';
+    }
+
+    /**
+     * Length in UTF-16 chars of the UTF-8 bytes in [from, to), without decoding them.
+     */
+    private int charLength(int from, int to) {
+        int length = 0;
+        for (int i = from; i < to; i++) {
+            int b = data[i] & 0xff;
+            if ((b & 0xc0) != 0x80) {
+                length += b >= 0xf0 ? 2 : 1;
+            }
+        }
+        return length;
+    }
+
+    private String decode(int from, int to) {
+        return new String(data, from, to - from, StandardCharsets.UTF_8);
+    }
+}
@@ -2,27 +2,30 @@ package org.develz.crawl.tools;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.EnumMap;
-import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
-import java.util.Queue;
 import java.util.Random;
 import java.util.Set;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 /**
@@ -43,6 +46,9 @@ public final class DungeonMapSimulator {
     private static final char STAIRS_UP = '<';
     private static final char STAIRS_DOWN = '>';
     private static final char LUA_MARKER = '*';
+    private static final int MAX_ATTEMPTS = 50;
+    private static final int RANDOM_VAULT_ATTEMPTS = 25;
+    private static final int RANDOM_VAULT_VETOES = 10;
 
     private enum LayoutStyle {
         BASIC_ROOMS,
@@ -62,20 +68,37 @@ public final class DungeonMapSimulator {
      * Result bundle returned by {@link #simulate(SimulationConfig)}.
      */
     public static final class SimulationResult {
-        private final char[][] tiles;
+        private final Grid grid;
         private final String source;
         private final int depth;
         private final long seed;
+        private final int attempts;
+        private volatile char[][] tiles;
 
-        private SimulationResult(char[][] tiles, String source, int depth, long seed) {
-            this.tiles = tiles;
+        private SimulationResult(Grid grid, String source, int depth, long seed, int attempts) {
+            this.grid = grid;
             this.source = source;
             this.depth = depth;
             this.seed = seed;
+            this.attempts = attempts;
+        }
+
+        public Grid grid() {
+            return grid;
         }
 
+        /**
+         * The level as a {@code char[][]}, for callers that predate {@link #grid()}.
+         * Built on first call and then returned as is; it is a copy, so changes to
+         * it do not reach the grid.
+         */
         public char[][] tiles() {
-            return tiles;
+            char[][] view = tiles;
+            if (view == null) {
+                view = grid.toCharArray();
+                tiles = view;
+            }
+            return view;
         }
 
         public String source() {
@@ -89,117 +112,194 @@ public final class DungeonMapSimulator {
         public long seed() {
             return seed;
         }
+
+        /**
+         * Build attempts made, counting the one whose level was returned.
+         */
+        int attempts() {
+            return attempts;
+        }
     }
 
+    private final VaultLibrary.Holder libraryHolder;
+    private final VaultFailureMemory failureMemory;
+
     /**
-     * Representation of a single MAP/ENDMAP block discovered in a .des file.
+     * Create a simulator that parses the vault library of each configuration's
+     * source root on every call to {@link #simulate(SimulationConfig)}.
      */
-    private static final class MapDefinition {
-        private final String name;
-        private final Path source;
-        private final String relativeSource;
-        private final List<String> rows;
-        private final Set<String> placeHints;
-
-        private MapDefinition(String name, Path source, String relativeSource,
-                              List<String> rows, Set<String> placeHints) {
-            this.name = name;
-            this.source = source;
-            this.relativeSource = relativeSource;
-            this.rows = rows;
-            this.placeHints = placeHints;
-        }
+    public DungeonMapSimulator() {
+        this.libraryHolder = null;
+        this.failureMemory = null;
+    }
 
-        String name() {
-            return name;
-        }
+    /**
+     * Create a simulator that shares an already parsed library. The library's
+     * source root takes precedence over {@link SimulationConfig#sourceRoot()}.
+     */
+    public DungeonMapSimulator(VaultLibrary library) {
+        this(VaultLibrary.Holder.of(Objects.requireNonNull(library, "library")));
+    }
 
-        Path source() {
-            return source;
-        }
+    /**
+     * Create a simulator that parses the library on first use and shares it with
+     * every later simulation (and any other simulator using the same holder).
+     */
+    public DungeonMapSimulator(VaultLibrary.Holder libraryHolder) {
+        this.libraryHolder = Objects.requireNonNull(libraryHolder, "libraryHolder");
+        this.failureMemory = null;
+    }
 
-        String relativeSource() {
-            return relativeSource;
-        }
+    /**
+     * Like {@link #DungeonMapSimulator(VaultLibrary.Holder)}, but every simulation
+     * also consults and extends {@code failureMemory}, so vaults vetoed in one run
+     * are not drawn again on the same kind of level in later runs.
+     */
+    public DungeonMapSimulator(VaultLibrary.Holder libraryHolder, VaultFailureMemory failureMemory) {
+        this.libraryHolder = Objects.requireNonNull(libraryHolder, "libraryHolder");
+        this.failureMemory = Objects.requireNonNull(failureMemory, "failureMemory");
+    }
 
-        int height() {
-            return rows.size();
-        }
+    /**
+     * Produce a deterministic map preview using the supplied configuration.
+     */
+    public SimulationResult simulate(SimulationConfig config) throws IOException {
+        Random rng = new Random(config.seed());
+        VaultLibrary library = libraryHolder != null
+                ? libraryHolder.get()
+                : VaultLibrary.load(config.sourceRoot(), config.vaultCache(), config.vaultStorage());
+        List<Path> dlua = library.dluaScripts();
 
-        int width() {
-            return rows.stream().mapToInt(String::length).max().orElse(0);
+        RetryController retry = new RetryController(config,
+                failureMemory != null ? failureMemory : new VaultFailureMemory());
+        if (config.attemptWindow() > 0) {
+            return simulateSpeculatively(config, library, dlua, retry);
         }
 
-        char[][] toTileArray() {
-            int h = height();
-            int w = width();
-            char[][] data = new char[h][w];
-            for (int y = 0; y < h; y++) {
-                String row = rows.get(y);
-                for (int x = 0; x < w; x++) {
-                    data[y][x] = x < row.length() ? row.charAt(x) : ' ';
-                }
+        Grid lastTiles = null;
+        String lastSource = "";
+        for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+            LevelBuild build = buildLevel(config, rng, library, dlua, retry);
+            if (build.success()) {
+                return new SimulationResult(build.tiles(), build.source(), config.depth(), config.seed(), attempt);
             }
-            return data;
-        }
 
-        boolean matchesBranch(String branchCode) {
-            if (branchCode == null) {
-                return true;
-            }
-            if (placeHints.stream().anyMatch(p -> p.equalsIgnoreCase(branchCode))) {
-                return true;
+            lastTiles = build.tiles();
+            lastSource = build.source();
+            if (retry.abandoned()) {
+                return new SimulationResult(lastTiles, lastSource + " (abandoned)", config.depth(), config.seed(),
+                        attempt);
             }
-            return relativeSource.toLowerCase().contains("branches/")
-                    && relativeSource.toLowerCase().contains(branchCode.toLowerCase());
+            retry.attemptFailed(attempt);
         }
+        return exhausted(config, lastTiles, lastSource, rng);
     }
 
     /**
-     * Produce a deterministic map preview using the supplied configuration.
+     * The attempt loop run a window of {@link SimulationConfig#attemptWindow()}
+     * attempts at a time on the fork-join pool of the calling thread, or the
+     * common pool when it is not a pool worker.
+     *
+     * Attempt {@code n} draws from its own stream seeded from (seed, n) and sees
+     * the retry state as it stood when its window started; its vetoes are only
+     * applied once the whole window is done, in attempt order, exactly as a
+     * sequential run of the window would. The lowest-numbered success wins, so
+     * the outcome depends on the window size alone and never on scheduling.
+     * Layouts are not reused across vetoes in this mode, since each attempt
+     * builds its own.
      */
-    public SimulationResult simulate(SimulationConfig config) throws IOException {
-        Random rng = new Random(config.seed());
-        List<MapDefinition> library = loadVaultLibrary(config.sourceRoot());
-        List<Path> dlua = loadDlua(config.sourceRoot());
-
-        char[][] lastTiles = null;
+    private SimulationResult simulateSpeculatively(SimulationConfig config,
+                                                   VaultLibrary library,
+                                                   List<Path> dlua,
+                                                   RetryController retry) throws IOException {
+        Grid lastTiles = null;
         String lastSource = "";
-        boolean allowRandomVaults = true;
-
-        for (int attempt = 1; attempt <= 50; attempt++) {
-            LevelBuild build = buildLevel(config, rng, library, dlua, allowRandomVaults);
-            if (build.success()) {
-                return new SimulationResult(build.tiles(), build.source(), config.depth(), config.seed());
+        for (int first = 1; first <= MAX_ATTEMPTS; first += config.attemptWindow()) {
+            int last = Math.min(MAX_ATTEMPTS, first + config.attemptWindow() - 1);
+            List<RetryController> forks = new ArrayList<>(last - first + 1);
+            List<Callable<LevelBuild>> attempts = new ArrayList<>(last - first + 1);
+            for (int attempt = first; attempt <= last; attempt++) {
+                RetryController fork = retry.fork();
+                Random rng = new Random(attemptSeed(config.seed(), attempt));
+                forks.add(fork);
+                attempts.add(() -> buildLevel(config, rng, library, dlua, fork));
             }
+            ForkJoinPool pool = ForkJoinTask.inForkJoinPool() ? ForkJoinTask.getPool() : ForkJoinPool.commonPool();
+            List<Future<LevelBuild>> builds = pool.invokeAll(attempts);
+            for (int i = 0; i < builds.size(); i++) {
+                LevelBuild build = join(builds.get(i));
+                if (build.success()) {
+                    return new SimulationResult(build.tiles(), build.source(), config.depth(), config.seed(),
+                            first + i);
+                }
 
-            lastTiles = build.tiles();
-            lastSource = build.source();
-            if (attempt == 25) {
-                allowRandomVaults = false;
+                lastTiles = build.tiles();
+                lastSource = build.source();
+                retry.merge(forks.get(i));
+                if (retry.abandoned()) {
+                    return new SimulationResult(lastTiles, lastSource + " (abandoned)", config.depth(),
+                            config.seed(), first + i);
+                }
+                retry.attemptFailed(first + i);
             }
         }
+        return exhausted(config, lastTiles, lastSource, new Random(config.seed()));
+    }
 
+    private SimulationResult exhausted(SimulationConfig config, Grid lastTiles, String lastSource,
+                                       Random rng) {
         if (lastTiles == null) {
-            lastTiles = generateBasicLayout(config.width(), config.height(), rng);
+            lastTiles = generateBasicLayout(config.width(), config.height(), rng).toGrid(WALL, FLOOR);
             lastSource = "basic-layout";
         }
         return new SimulationResult(lastTiles, lastSource + " (exhausted attempts)",
-                config.depth(), config.seed());
+                config.depth(), config.seed(), MAX_ATTEMPTS);
+    }
+
+    private static LevelBuild join(Future<LevelBuild> build) throws IOException {
+        try {
+            return build.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for a build attempt");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * Seed of attempt {@code attempt}'s random stream: the SplitMix64 finalizer
+     * applied to the pair, so neighbouring attempts get unrelated streams.
+     */
+    private static long attemptSeed(long seed, int attempt) {
+        long z = seed + attempt * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
     }
 
     private static final class LevelBuild {
-        private final char[][] tiles;
+        private final Grid tiles;
         private final String source;
         private final boolean success;
 
-        private LevelBuild(char[][] tiles, String source, boolean success) {
+        private LevelBuild(Grid tiles, String source, boolean success) {
             this.tiles = tiles;
             this.source = source;
             this.success = success;
         }
 
-        char[][] tiles() {
+        Grid tiles() {
             return tiles;
         }
 
@@ -213,27 +313,31 @@ public final class DungeonMapSimulator {
     }
 
     private static final class BuildPlan {
-        private final char[][] tiles;
+        private final Grid tiles;
         private final String source;
         private final boolean success;
 
-        private BuildPlan(char[][] tiles, String source, boolean success) {
+        private BuildPlan(Grid tiles, String source, boolean success) {
             this.tiles = tiles;
             this.source = source;
             this.success = success;
         }
+
+        private BuildPlan(BitGrid layout, String source, boolean success) {
+            this(layout.toGrid(WALL, FLOOR), source, success);
+        }
     }
 
     private static final class LayoutPlan {
-        private final char[][] tiles;
+        private final Grid tiles;
         private final String source;
 
-        private LayoutPlan(char[][] tiles, String source) {
-            this.tiles = tiles;
+        private LayoutPlan(BitGrid layout, String source) {
+            this.tiles = layout.toGrid(WALL, FLOOR);
             this.source = source;
         }
 
-        char[][] tiles() {
+        Grid tiles() {
             return tiles;
         }
 
@@ -242,13 +346,224 @@ public final class DungeonMapSimulator {
         }
     }
 
+    /**
+     * The base layout of the current attempt, kept across vault-placement vetoes.
+     *
+     * The planner writes nothing to a layout whose vaults it vetoes, so there is no
+     * overlay to roll back: the next attempt re-selects vaults against the same
+     * pristine tiles (and the same placement grid) instead of paying for a new
+     * layout. The layout is regenerated once it has been vetoed {@code limit}
+     * times, or as soon as an attempt writes to it.
+     */
+    private final class LayoutReuse {
+        private final int limit;
+        private LayoutPlan layout;
+        private PlacementGrid grid;
+        private int vetoes;
+
+        private LayoutReuse(int limit) {
+            this.limit = limit;
+        }
+
+        LayoutPlan layout(SimulationConfig config, Random rng) {
+            if (layout == null) {
+                layout = generateLayout(config, rng);
+                grid = null;
+                vetoes = 0;
+            }
+            return layout;
+        }
+
+        PlacementGrid grid() {
+            if (grid == null) {
+                grid = new PlacementGrid(layout.tiles());
+            }
+            return grid;
+        }
+
+        /**
+         * The vaults chosen for the layout did not fit; it is still untouched.
+         */
+        void vetoed() {
+            if (++vetoes > limit) {
+                release();
+            }
+        }
+
+        /**
+         * The layout is about to be written to and must not be handed out again.
+         */
+        void release() {
+            layout = null;
+            grid = null;
+        }
+    }
+
+    /**
+     * Attempt bookkeeping for one simulation, in place of a fixed schedule.
+     *
+     * Every veto is recorded in the {@link VaultFailureMemory}, and the vaults it
+     * excludes for the current layout style and level size are dropped from the
+     * pools drawn from afterwards. Random vaults are given up after
+     * {@link #RANDOM_VAULT_VETOES} vetoes, or failing that after
+     * {@link #RANDOM_VAULT_ATTEMPTS} attempts as before. A forced map is drawn on
+     * its own, so once the memory excludes every map of that name the map did not
+     * fit such a level even alone; the simulation is then abandoned instead of
+     * running out its attempts.
+     */
+    private final class RetryController {
+        private final SimulationConfig config;
+        private final VaultFailureMemory memory;
+        private final LayoutReuse layouts;
+        private boolean allowRandomVaults = true;
+        private boolean abandoned;
+        private int vetoes;
+        private VaultPool randomPool;
+        private VaultPool fixedPool;
+        private VaultPool poolSource;
+        private Set<String> poolExcluded;
+        private VaultPool poolFiltered;
+
+        /** Vetoes of a speculative fork, held back until {@link #merge} replays them. */
+        private final List<Consumer<RetryController>> deferred;
+
+        private RetryController(SimulationConfig config, VaultFailureMemory memory) {
+            this(config, memory, config.layoutRetries(), null);
+        }
+
+        private RetryController(SimulationConfig config, VaultFailureMemory memory, int layoutRetries,
+                                List<Consumer<RetryController>> deferred) {
+            this.config = config;
+            this.memory = memory;
+            this.layouts = new LayoutReuse(layoutRetries);
+            this.deferred = deferred;
+        }
+
+        /**
+         * A controller for one speculative attempt: it starts from this one's
+         * state, never reuses a layout, and keeps its vetoes to itself.
+         */
+        RetryController fork() {
+            RetryController fork = new RetryController(config, memory, 0, new ArrayList<>(1));
+            fork.allowRandomVaults = allowRandomVaults;
+            fork.randomPool = randomPool;
+            fork.fixedPool = fixedPool;
+            return fork;
+        }
+
+        /**
+         * Apply what {@code fork}'s attempt learned, as if it had run on this controller.
+         */
+        void merge(RetryController fork) {
+            for (Consumer<RetryController> veto : fork.deferred) {
+                veto.accept(this);
+            }
+            abandoned |= fork.abandoned;
+            if (randomPool == null) {
+                randomPool = fork.randomPool;
+            }
+            if (fixedPool == null) {
+                fixedPool = fork.fixedPool;
+            }
+        }
+
+        LayoutReuse layouts() {
+            return layouts;
+        }
+
+        boolean allowRandomVaults() {
+            return allowRandomVaults;
+        }
+
+        boolean abandoned() {
+            return abandoned;
+        }
+
+        /**
+         * Candidates for this simulation's branch, level and size less the vaults
+         * excluded on a level of layout {@code style}. The library is asked once
+         * for each setting of the random-vaults flag, so at most twice; the
+         * filtered pool is reused while the exclusions stay the same.
+         */
+        VaultPool candidates(VaultLibrary library, String branchCode, String style) {
+            VaultPool pool = allowRandomVaults ? randomPool : fixedPool;
+            if (pool == null) {
+                pool = library.candidates(branchCode, config.depth(), config.width(), config.height(),
+                        allowRandomVaults);
+                if (allowRandomVaults) {
+                    randomPool = pool;
+                } else {
+                    fixedPool = pool;
+                }
+            }
+            return filter(pool, style);
+        }
+
+        private VaultPool filter(VaultPool pool, String style) {
+            Set<String> excluded = memory.excluded(style, config.width(), config.height());
+            if (pool != poolSource || excluded != poolExcluded) {
+                poolSource = pool;
+                poolExcluded = excluded;
+                poolFiltered = pool.without(excluded);
+            }
+            return poolFiltered;
+        }
+
+        /**
+         * True when the pool last filtered holds maps named {@code name} (ignoring
+         * case) and the memory has excluded every one of them.
+         */
+        boolean excludesAll(String name) {
+            if (poolSource == null) {
+                return false;
+            }
+            boolean found = false;
+            for (MapDefinition map : poolSource.maps()) {
+                if (map.name().equalsIgnoreCase(name)) {
+                    if (!poolExcluded.contains(map.qualifiedName())) {
+                        return false;
+                    }
+                    found = true;
+                }
+            }
+            return found;
+        }
+
+        void abandon() {
+            abandoned = true;
+        }
+
+        /**
+         * {@code vaults} could not all be placed on a layout of {@code style}.
+         */
+        void vetoed(List<MapDefinition> vaults, VaultPlanner.Plan placement, String style) {
+            if (deferred != null) {
+                deferred.add(parent -> parent.vetoed(vaults, placement, style));
+                layouts.vetoed();
+                return;
+            }
+            for (int i = 0; i < vaults.size(); i++) {
+                boolean alone = i == placement.failed() && placement.failedAlone();
+                memory.recordFailure(vaults.get(i).qualifiedName(), style, config.width(), config.height(), alone);
+            }
+            vetoes++;
+            layouts.vetoed();
+        }
+
+        void attemptFailed(int attempt) {
+            if (attempt >= RANDOM_VAULT_ATTEMPTS || vetoes >= RANDOM_VAULT_VETOES) {
+                allowRandomVaults = false;
+            }
+        }
+    }
+
     private LevelBuild buildLevel(SimulationConfig config,
                                  Random rng,
-                                 List<MapDefinition> library,
+                                 VaultLibrary library,
                                  List<Path> dlua,
-                                 boolean allowRandomVaults) throws IOException {
+                                 RetryController retry) throws IOException {
         resetLevelState();
-        BuildPlan plan = builderByType(config, rng, library, allowRandomVaults);
+        BuildPlan plan = builderByType(config, rng, library, retry);
         if (!plan.success) {
             return new LevelBuild(plan.tiles, plan.source, false);
         }
@@ -265,8 +580,8 @@ public final class DungeonMapSimulator {
 
     private BuildPlan builderByType(SimulationConfig config,
                                    Random rng,
-                                   List<MapDefinition> library,
-                                   boolean allowRandomVaults) {
+                                   VaultLibrary library,
+                                   RetryController retry) {
         String branch = config.branch().map(String::toUpperCase).orElse("D");
         if (branch.contains("ABYSS")) {
             return new BuildPlan(generateAbyss(config, rng), "branch=" + branch + ":abyss", true);
@@ -281,26 +596,37 @@ public final class DungeonMapSimulator {
         if (branch.contains("ZOT")) {
             return new BuildPlan(generateZotTower(config, rng), "branch=" + branch + ":zot", true);
         }
-        return builderNormal(config, rng, library, allowRandomVaults);
+        return builderNormal(config, rng, library, retry);
     }
 
     private BuildPlan builderNormal(SimulationConfig config,
                                     Random rng,
-                                    List<MapDefinition> library,
-                                    boolean allowRandomVaults) {
-        LayoutPlan plan = generateLayout(config, rng);
-        char[][] layout = plan.tiles();
+                                    VaultLibrary library,
+                                    RetryController retry) {
+        LayoutReuse layouts = retry.layouts();
+        LayoutPlan plan = layouts.layout(config, rng);
+        Grid layout = plan.tiles();
         StringBuilder source = new StringBuilder(plan.source());
 
-        List<MapDefinition> vaults = selectVaults(library, config.mapName(), config.branch(), rng,
-                allowRandomVaults, config.width(), config.height());
+        List<MapDefinition> vaults = selectVaults(library, config.mapName(), config.branch(), rng, retry,
+                plan.source());
+        if (vaults.isEmpty() && config.mapName().isPresent() && retry.excludesAll(config.mapName().get().trim())) {
+            retry.abandon();
+            return new BuildPlan(layout, "DES:" + config.mapName().get().trim() + " cannot be placed", false);
+        }
+        PlacementGrid grid = layouts.grid();
+        // Every vault gets an orientation and a non-overlapping spot before anything is written.
+        VaultPlanner.Plan placement = VaultPlanner.plan(grid, vaults, rng);
+        if (!placement.feasible()) {
+            retry.vetoed(vaults, placement, plan.source());
+            return new BuildPlan(layout, "DES:" + vaults.get(placement.failed()).name() + " vetoed (placement)",
+                    false);
+        }
+        layouts.release();
         Set<String> placed = new LinkedHashSet<>();
-        for (MapDefinition vault : vaults) {
-            boolean placedVault = placeVault(layout, vault, rng);
-            if (!placedVault) {
-                return new BuildPlan(layout, "DES:" + vault.name() + " vetoed (placement)", false);
-            }
-            placed.add(vault.name());
+        for (int i = 0; i < vaults.size(); i++) {
+            grid.overlay(placement.tiles(i), placement.x(i), placement.y(i));
+            placed.add(vaults.get(i).name());
         }
 
         if (!placed.isEmpty()) {
@@ -310,28 +636,28 @@ public final class DungeonMapSimulator {
         return new BuildPlan(layout, source.toString(), true);
     }
 
-    private char[][] generateAbyss(SimulationConfig config, Random rng) {
-        char[][] tiles = generateBasicLayout(config.width(), config.height(), rng);
-        scatter(tiles, rng, FLOOR, WALL, 0.30);
+    private BitGrid generateAbyss(SimulationConfig config, Random rng) {
+        BitGrid tiles = generateBasicLayout(config.width(), config.height(), rng);
+        scatter(tiles, rng, 0.30);
         return tiles;
     }
 
-    private char[][] generatePan(SimulationConfig config, Random rng) {
-        char[][] tiles = generateBasicLayout(config.width(), config.height(), rng);
+    private BitGrid generatePan(SimulationConfig config, Random rng) {
+        BitGrid tiles = generateBasicLayout(config.width(), config.height(), rng);
         carveRooms(tiles, rng, Math.max(4, Math.min(config.width(), config.height()) / 3));
         return tiles;
     }
 
-    private char[][] generateHellCitadel(SimulationConfig config, Random rng) {
-        char[][] tiles = generateDiamondLayout(config.width(), config.height(), rng);
+    private BitGrid generateHellCitadel(SimulationConfig config, Random rng) {
+        BitGrid tiles = generateDiamondLayout(config.width(), config.height(), rng);
         int rings = 3;
         for (int r = 1; r <= rings; r++) {
             int inset = r * Math.max(2, Math.min(config.width(), config.height()) / 12);
-            for (int y = inset; y < tiles.length - inset; y++) {
-                for (int x = inset; x < tiles[0].length - inset; x++) {
-                    if (y == inset || y == tiles.length - inset - 1 || x == inset || x == tiles[0].length - inset - 1) {
+            for (int y = inset; y < tiles.height() - inset; y++) {
+                for (int x = inset; x < tiles.width() - inset; x++) {
+                    if (y == inset || y == tiles.height() - inset - 1 || x == inset || x == tiles.width() - inset - 1) {
                         if (rng.nextDouble() < 0.8) {
-                            tiles[y][x] = WALL;
+                            tiles.setWall(x, y);
                         }
                     }
                 }
@@ -340,16 +666,16 @@ public final class DungeonMapSimulator {
         return tiles;
     }
 
-    private char[][] generateZotTower(SimulationConfig config, Random rng) {
-        char[][] tiles = generateBigRoomLayout(config.width(), config.height(), rng);
+    private BitGrid generateZotTower(SimulationConfig config, Random rng) {
+        BitGrid tiles = generateBigRoomLayout(config.width(), config.height(), rng);
         int concentric = 4;
         for (int i = 0; i < concentric; i++) {
             int margin = 2 + i * 3;
-            for (int y = margin; y < tiles.length - margin; y++) {
-                for (int x = margin; x < tiles[0].length - margin; x++) {
-                    if (y == margin || y == tiles.length - margin - 1 || x == margin || x == tiles[0].length - margin - 1) {
+            for (int y = margin; y < tiles.height() - margin; y++) {
+                for (int x = margin; x < tiles.width() - margin; x++) {
+                    if (y == margin || y == tiles.height() - margin - 1 || x == margin || x == tiles.width() - margin - 1) {
                         if (rng.nextDouble() < 0.5) {
-                            tiles[y][x] = WALL;
+                            tiles.setWall(x, y);
                         }
                     }
                 }
@@ -359,158 +685,40 @@ public final class DungeonMapSimulator {
         return tiles;
     }
 
-    private boolean postProcess(char[][] tiles) {
+    private boolean postProcess(Grid tiles) {
         floodFillConnectivity(tiles);
         return hasWalkable(tiles);
     }
 
-    private List<MapDefinition> loadVaultLibrary(Path sourceRoot) throws IOException {
-        List<MapDefinition> maps = new ArrayList<>();
-        Path desRoot = sourceRoot.resolve("dat/des");
-        if (!Files.isDirectory(desRoot)) {
-            return maps;
-        }
-
-        Files.walk(desRoot)
-                .filter(path -> path.toString().endsWith(".des"))
-                .forEach(path -> {
-                    try {
-                        maps.addAll(parseDesFile(desRoot, path));
-                    } catch (IOException ignored) {
-                    }
-                });
-        return maps;
-    }
-
-    private List<Path> loadDlua(Path sourceRoot) throws IOException {
-        List<Path> dlua = new ArrayList<>();
-        Path dluaRoot = sourceRoot.resolve("dat/dlua");
-        if (!Files.isDirectory(dluaRoot)) {
-            return dlua;
-        }
-        Files.walk(dluaRoot)
-                .filter(path -> path.toString().endsWith(".lua") || path.toString().endsWith(".dlua"))
-                .forEach(dlua::add);
-        return dlua;
-    }
-
-    private List<MapDefinition> parseDesFile(Path desRoot, Path desFile) throws IOException {
-        List<String> rawLines = Files.readAllLines(desFile, StandardCharsets.UTF_8);
-        List<MapDefinition> maps = new ArrayList<>();
-        List<String> buffer = null;
-        String currentName = null;
-        int anonymousCount = 0;
-        Set<String> placeHints = new LinkedHashSet<>();
-        String relativeSource = desRoot.relativize(desFile).toString().replace('\\', '/');
-        Pattern placeDirective = Pattern.compile("^PLACE:\\s*(.+)$", Pattern.CASE_INSENSITIVE);
-        Pattern placeFunction = Pattern.compile("place\\(\\\"([^\\\"]+)\\\"", Pattern.CASE_INSENSITIVE);
-
-        for (String rawLine : rawLines) {
-            String trimmed = rawLine.trim();
-            if (trimmed.startsWith("NAME:")) {
-                currentName = trimmed.substring("NAME:".length()).trim();
-            }
-
-            Matcher directiveMatcher = placeDirective.matcher(trimmed);
-            if (directiveMatcher.find()) {
-                String[] tokens = directiveMatcher.group(1).split(",");
-                for (String token : tokens) {
-                    collectPlaceHints(placeHints, token);
-                }
-            }
-
-            Matcher functionMatcher = placeFunction.matcher(trimmed);
-            while (functionMatcher.find()) {
-                collectPlaceHints(placeHints, functionMatcher.group(1));
-            }
-
-            if (trimmed.startsWith("MAP")) {
-                buffer = new ArrayList<>();
-                continue;
-            }
-            if (trimmed.startsWith("ENDMAP")) {
-                if (buffer != null) {
-                    String name = currentName != null ? currentName : "anonymous-" + (++anonymousCount);
-                    maps.add(new MapDefinition(name, desFile, relativeSource,
-                            buffer, new LinkedHashSet<>(placeHints)));
-                }
-                buffer = null;
-                currentName = null;
-                continue;
-            }
-            if (buffer != null) {
-                buffer.add(rawLine);
-            }
-        }
-
-        return maps;
-    }
-
-    private void collectPlaceHints(Set<String> placeHints, String token) {
-        String cleaned = token.trim();
-        if (cleaned.isEmpty()) {
-            return;
-        }
-        String upper = cleaned.toUpperCase();
-        placeHints.add(upper);
-        int colon = upper.indexOf(':');
-        if (colon > 0) {
-            placeHints.add(upper.substring(0, colon));
-        }
-    }
-
-    private List<MapDefinition> selectVaults(List<MapDefinition> maps,
+    private List<MapDefinition> selectVaults(VaultLibrary library,
                                              Optional<String> desiredName,
                                              Optional<String> branch,
                                              Random rng,
-                                             boolean allowRandomVaults,
-                                             int maxWidth,
-                                             int maxHeight) {
-        if (maps.isEmpty()) {
+                                             RetryController retry,
+                                             String style) {
+        if (library.size() == 0) {
             return List.of();
         }
 
-        List<MapDefinition> pool = filterByBranchAndSize(maps, branch, allowRandomVaults, maxWidth, maxHeight);
+        String branchCode = branch.map(b -> b.split(":"))
+                .map(parts -> parts.length > 0 ? parts[0].toUpperCase() : null)
+                .orElse(null);
+        boolean allowRandomVaults = retry.allowRandomVaults();
+        VaultPool pool = retry.candidates(library, branchCode, style);
         if (pool.isEmpty()) {
             return List.of();
         }
 
         if (desiredName.isPresent()) {
             String target = desiredName.get().trim();
-            return pool.stream()
+            return pool.maps().stream()
                     .filter(map -> map.name().equalsIgnoreCase(target))
                     .limit(1)
                     .collect(Collectors.toList());
         }
 
         int budget = allowRandomVaults ? 1 + rng.nextInt(3) : 1;
-        Collections.shuffle(pool, rng);
-        return pool.stream().limit(budget).collect(Collectors.toList());
-    }
-
-    private List<MapDefinition> filterByBranchAndSize(List<MapDefinition> maps,
-                                                      Optional<String> branch,
-                                                      boolean allowRandomVaults,
-                                                      int maxWidth,
-                                                      int maxHeight) {
-        String branchCode = branch.map(b -> b.split(":"))
-                .map(parts -> parts.length > 0 ? parts[0].toUpperCase() : null)
-                .orElse(null);
-
-        List<MapDefinition> filtered = new ArrayList<>();
-        for (MapDefinition map : maps) {
-            if (map.width() > maxWidth || map.height() > maxHeight) {
-                continue;
-            }
-            if (!allowRandomVaults && map.name().toLowerCase().contains("vault")) {
-                continue;
-            }
-            if (branchCode != null && !map.matchesBranch(branchCode)) {
-                continue;
-            }
-            filtered.add(map);
-        }
-        return filtered;
+        return pool.draw(budget, rng);
     }
 
     private LayoutPlan generateLayout(SimulationConfig config, Random rng) {
@@ -597,13 +805,8 @@ public final class DungeonMapSimulator {
         weights.merge(style, delta, Integer::sum);
     }
 
-    private char[][] generateBasicLayout(int width, int height, Random rng) {
-        char[][] tiles = new char[height][width];
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                tiles[y][x] = WALL;
-            }
-        }
+    private BitGrid generateBasicLayout(int width, int height, Random rng) {
+        BitGrid tiles = new BitGrid(width, height, true);
 
         int rooms = Math.max(3, Math.min(width, height) / 5);
         carveRooms(tiles, rng, rooms);
@@ -612,64 +815,27 @@ public final class DungeonMapSimulator {
         return tiles;
     }
 
-    private char[][] generateCellularLayout(int width, int height, Random rng) {
-        char[][] tiles = new char[height][width];
+    private BitGrid generateCellularLayout(int width, int height, Random rng) {
+        BitGrid tiles = new BitGrid(width, height, true);
         for (int y = 0; y < height; y++) {
             for (int x = 0; x < width; x++) {
-                tiles[y][x] = rng.nextDouble() < 0.45 ? WALL : FLOOR;
+                tiles.set(x, y, rng.nextDouble() < 0.45);
             }
         }
 
+        BitGrid scratch = new BitGrid(width, height, false);
         for (int iter = 0; iter < 5; iter++) {
-            tiles = smoothStep(tiles);
+            tiles.smoothInto(scratch);
+            BitGrid smoothed = scratch;
+            scratch = tiles;
+            tiles = smoothed;
         }
         padWalls(tiles);
         return tiles;
     }
 
-    private char[][] smoothStep(char[][] tiles) {
-        int height = tiles.length;
-        int width = tiles[0].length;
-        char[][] next = new char[height][width];
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                int walls = countNeighbours(tiles, x, y, WALL);
-                if (walls > 4) {
-                    next[y][x] = WALL;
-                } else if (walls < 4) {
-                    next[y][x] = FLOOR;
-                } else {
-                    next[y][x] = tiles[y][x];
-                }
-            }
-        }
-        return next;
-    }
-
-    private int countNeighbours(char[][] tiles, int cx, int cy, char target) {
-        int count = 0;
-        for (int y = cy - 1; y <= cy + 1; y++) {
-            for (int x = cx - 1; x <= cx + 1; x++) {
-                if (x == cx && y == cy) {
-                    continue;
-                }
-                if (y < 0 || y >= tiles.length || x < 0 || x >= tiles[0].length) {
-                    count++;
-                } else if (tiles[y][x] == target) {
-                    count++;
-                }
-            }
-        }
-        return count;
-    }
-
-    private char[][] generateMazeLayout(int width, int height, Random rng) {
-        char[][] tiles = new char[height][width];
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                tiles[y][x] = WALL;
-            }
-        }
+    private BitGrid generateMazeLayout(int width, int height, Random rng) {
+        BitGrid tiles = new BitGrid(width, height, true);
 
         boolean[][] visited = new boolean[height][width];
         int startX = (width / 2) | 1;
@@ -679,13 +845,13 @@ public final class DungeonMapSimulator {
         return tiles;
     }
 
-    private void carveMaze(int x, int y, char[][] tiles, boolean[][] visited, Random rng) {
-        int height = tiles.length;
-        int width = tiles[0].length;
+    private void carveMaze(int x, int y, BitGrid tiles, boolean[][] visited, Random rng) {
+        int height = tiles.height();
+        int width = tiles.width();
         int[] dirs = {0, 1, 2, 3};
         shuffleArray(dirs, rng);
         visited[y][x] = true;
-        tiles[y][x] = FLOOR;
+        tiles.setFloor(x, y);
         for (int dir : dirs) {
             int dx = 0, dy = 0;
             switch (dir) {
@@ -700,15 +866,15 @@ public final class DungeonMapSimulator {
             if (ny <= 0 || ny >= height - 1 || nx <= 0 || nx >= width - 1 || visited[ny][nx]) {
                 continue;
             }
-            tiles[y + dy / 2][x + dx / 2] = FLOOR;
+            tiles.setFloor(x + dx / 2, y + dy / 2);
             carveMaze(nx, ny, tiles, visited, rng);
         }
     }
 
-    private void carveMazeDFS(char[][] tiles, int startX, int startY, Random rng) {
-        int boundedX = Math.max(1, Math.min(tiles[0].length - 2, startX | 1));
-        int boundedY = Math.max(1, Math.min(tiles.length - 2, startY | 1));
-        boolean[][] visited = new boolean[tiles.length][tiles[0].length];
+    private void carveMazeDFS(BitGrid tiles, int startX, int startY, Random rng) {
+        int boundedX = Math.max(1, Math.min(tiles.width() - 2, startX | 1));
+        int boundedY = Math.max(1, Math.min(tiles.height() - 2, startY | 1));
+        boolean[][] visited = new boolean[tiles.height()][tiles.width()];
         carveMaze(boundedX, boundedY, tiles, visited, rng);
     }
 
@@ -721,7 +887,7 @@ public final class DungeonMapSimulator {
         }
     }
 
-    private char[][] generateNoiseLayout(int width, int height, Random rng) {
+    private BitGrid generateNoiseLayout(int width, int height, Random rng) {
         double[][] heightmap = new double[height][width];
         for (int y = 0; y < height; y++) {
             for (int x = 0; x < width; x++) {
@@ -731,23 +897,20 @@ public final class DungeonMapSimulator {
             }
         }
 
-        char[][] tiles = new char[height][width];
+        BitGrid tiles = new BitGrid(width, height, true);
         for (int y = 0; y < height; y++) {
             for (int x = 0; x < width; x++) {
-                tiles[y][x] = heightmap[y][x] > 0.45 ? FLOOR : WALL;
+                tiles.set(x, y, !(heightmap[y][x] > 0.45));
             }
         }
 
-        tiles = smoothStep(tiles);
+        tiles = tiles.smooth();
         padWalls(tiles);
         return tiles;
     }
 
-    private char[][] generateCityLayout(int width, int height, Random rng) {
-        char[][] tiles = new char[height][width];
-        for (int y = 0; y < height; y++) {
-            Arrays.fill(tiles[y], WALL);
-        }
+    private BitGrid generateCityLayout(int width, int height, Random rng) {
+        BitGrid tiles = new BitGrid(width, height, true);
 
         int blockW = Math.max(6, width / 8);
         int blockH = Math.max(6, height / 8);
@@ -757,7 +920,7 @@ public final class DungeonMapSimulator {
                 int h = Math.min(blockH - 2, height - by - 2);
                 for (int y = by; y < by + h; y++) {
                     for (int x = bx; x < bx + w; x++) {
-                        tiles[y][x] = FLOOR;
+                        tiles.setFloor(x, y);
                     }
                 }
             }
@@ -765,12 +928,12 @@ public final class DungeonMapSimulator {
 
         for (int y = blockH / 2; y < height; y += blockH) {
             for (int x = 0; x < width; x++) {
-                tiles[Math.min(height - 2, y)][x] = FLOOR;
+                tiles.setFloor(x, Math.min(height - 2, y));
             }
         }
         for (int x = blockW / 2; x < width; x += blockW) {
             for (int y = 0; y < height; y++) {
-                tiles[y][Math.min(width - 2, x)] = FLOOR;
+                tiles.setFloor(Math.min(width - 2, x), y);
             }
         }
 
@@ -780,7 +943,7 @@ public final class DungeonMapSimulator {
             int r = 3 + rng.nextInt(4);
             for (int y = Math.max(1, cy - r); y < Math.min(height - 1, cy + r); y++) {
                 for (int x = Math.max(1, cx - r); x < Math.min(width - 1, cx + r); x++) {
-                    tiles[y][x] = FLOOR;
+                    tiles.setFloor(x, y);
                 }
             }
         }
@@ -789,11 +952,8 @@ public final class DungeonMapSimulator {
         return tiles;
     }
 
-    private char[][] generateChaoticCityLayout(int width, int height, Random rng) {
-        char[][] tiles = new char[height][width];
-        for (int y = 0; y < height; y++) {
-            Arrays.fill(tiles[y], WALL);
-        }
+    private BitGrid generateChaoticCityLayout(int width, int height, Random rng) {
+        BitGrid tiles = new BitGrid(width, height, true);
 
         int boxes = 20 + rng.nextInt(30);
         for (int i = 0; i < boxes; i++) {
@@ -801,11 +961,7 @@ public final class DungeonMapSimulator {
             int rh = 4 + rng.nextInt(Math.max(3, height / 10));
             int rx = rng.nextInt(Math.max(1, width - rw - 1));
             int ry = rng.nextInt(Math.max(1, height - rh - 1));
-            for (int y = ry; y < ry + rh; y++) {
-                for (int x = rx; x < rx + rw; x++) {
-                    tiles[y][x] = FLOOR;
-                }
-            }
+            tiles.fillRect(rx, ry, rx + rw, ry + rh, false);
         }
 
         for (int i = 0; i < 10; i++) {
@@ -820,11 +976,8 @@ public final class DungeonMapSimulator {
         return tiles;
     }
 
-    private char[][] generateLabyrinthLayout(int width, int height, Random rng) {
-        char[][] tiles = new char[height][width];
-        for (int y = 0; y < height; y++) {
-            Arrays.fill(tiles[y], WALL);
-        }
+    private BitGrid generateLabyrinthLayout(int width, int height, Random rng) {
+        BitGrid tiles = new BitGrid(width, height, true);
 
         int startX = 1 + rng.nextInt(Math.max(1, width - 2));
         int startY = 1 + rng.nextInt(Math.max(1, height - 2));
@@ -833,27 +986,21 @@ public final class DungeonMapSimulator {
         return tiles;
     }
 
-    private char[][] generateBigRoomLayout(int width, int height, Random rng) {
-        char[][] tiles = new char[height][width];
-        for (int y = 0; y < height; y++) {
-            Arrays.fill(tiles[y], FLOOR);
-        }
+    private BitGrid generateBigRoomLayout(int width, int height, Random rng) {
+        BitGrid tiles = new BitGrid(width, height, false);
         padWalls(tiles);
 
         int scatter = (width * height) / 40;
         for (int i = 0; i < scatter; i++) {
             int x = rng.nextInt(width);
             int y = rng.nextInt(height);
-            tiles[y][x] = WALL;
+            tiles.setWall(x, y);
         }
         return tiles;
     }
 
-    private char[][] generateDiamondLayout(int width, int height, Random rng) {
-        char[][] tiles = new char[height][width];
-        for (int y = 0; y < height; y++) {
-            Arrays.fill(tiles[y], WALL);
-        }
+    private BitGrid generateDiamondLayout(int width, int height, Random rng) {
+        BitGrid tiles = new BitGrid(width, height, true);
 
         int cx = width / 2;
         int cy = height / 2;
@@ -862,7 +1009,7 @@ public final class DungeonMapSimulator {
             for (int x = 0; x < width; x++) {
                 int dist = Math.abs(x - cx) + Math.abs(y - cy);
                 if (dist <= radius) {
-                    tiles[y][x] = FLOOR;
+                    tiles.setFloor(x, y);
                 }
             }
         }
@@ -874,7 +1021,7 @@ public final class DungeonMapSimulator {
             for (int y = Math.max(0, ry - r); y < Math.min(height, ry + r); y++) {
                 for (int x = Math.max(0, rx - r); x < Math.min(width, rx + r); x++) {
                     if (Math.abs(x - rx) + Math.abs(y - ry) <= r) {
-                        tiles[y][x] = FLOOR;
+                        tiles.setFloor(x, y);
                     }
                 }
             }
@@ -883,11 +1030,8 @@ public final class DungeonMapSimulator {
         return tiles;
     }
 
-    private char[][] generateRuinsLayout(int width, int height, Random rng) {
-        char[][] tiles = new char[height][width];
-        for (int y = 0; y < height; y++) {
-            Arrays.fill(tiles[y], FLOOR);
-        }
+    private BitGrid generateRuinsLayout(int width, int height, Random rng) {
+        BitGrid tiles = new BitGrid(width, height, false);
         padWalls(tiles);
 
         int ruins = (width * height) / 30;
@@ -899,7 +1043,7 @@ public final class DungeonMapSimulator {
             for (int y = ry; y < ry + rh; y++) {
                 for (int x = rx; x < rx + rw; x++) {
                     if (rng.nextDouble() < 0.7) {
-                        tiles[y][x] = WALL;
+                        tiles.setWall(x, y);
                     }
                 }
             }
@@ -907,8 +1051,8 @@ public final class DungeonMapSimulator {
         return tiles;
     }
 
-    private char[][] generateRiverLayout(int width, int height, Random rng) {
-        char[][] tiles = generateCellularLayout(width, height, rng);
+    private BitGrid generateRiverLayout(int width, int height, Random rng) {
+        BitGrid tiles = generateCellularLayout(width, height, rng);
         int meanders = 3 + rng.nextInt(3);
         for (int i = 0; i < meanders; i++) {
             int y = rng.nextInt(height);
@@ -919,7 +1063,7 @@ public final class DungeonMapSimulator {
                 for (int t = -thickness; t <= thickness; t++) {
                     int ty = cy + t;
                     if (ty > 0 && ty < height - 1) {
-                        tiles[ty][x] = FLOOR;
+                        tiles.setFloor(x, ty);
                     }
                 }
                 y = cy;
@@ -978,31 +1122,27 @@ public final class DungeonMapSimulator {
         return a + t * (b - a);
     }
 
-    private void carveRooms(char[][] tiles, Random rng, int roomCount) {
-        int height = tiles.length;
-        int width = tiles[0].length;
+    private void carveRooms(BitGrid tiles, Random rng, int roomCount) {
+        int height = tiles.height();
+        int width = tiles.width();
         for (int i = 0; i < roomCount; i++) {
             int rw = 4 + rng.nextInt(Math.max(2, width / 8));
             int rh = 4 + rng.nextInt(Math.max(2, height / 8));
             int rx = rng.nextInt(Math.max(1, width - rw - 1));
             int ry = rng.nextInt(Math.max(1, height - rh - 1));
-            for (int y = ry; y < ry + rh; y++) {
-                for (int x = rx; x < rx + rw; x++) {
-                    tiles[y][x] = FLOOR;
-                }
-            }
+            tiles.fillRect(rx, ry, rx + rw, ry + rh, false);
         }
     }
 
-    private void connectRooms(char[][] tiles, Random rng) {
-        List<int[]> floors = collectTiles(tiles, FLOOR);
+    private void connectRooms(BitGrid tiles, Random rng) {
+        List<int[]> floors = tiles.floorCells();
         Collections.shuffle(floors, rng);
         for (int i = 1; i < floors.size(); i++) {
             carveCorridor(tiles, floors.get(i - 1), floors.get(i));
         }
     }
 
-    private void carveCorridor(char[][] tiles, int[] from, int[] to) {
+    private void carveCorridor(BitGrid tiles, int[] from, int[] to) {
         int x = from[0];
         int y = from[1];
         while (x != to[0] || y != to[1]) {
@@ -1010,14 +1150,14 @@ public final class DungeonMapSimulator {
             else if (x > to[0]) x--;
             if (y < to[1]) y++;
             else if (y > to[1]) y--;
-            tiles[y][x] = FLOOR;
+            tiles.setFloor(x, y);
         }
     }
 
-    private void carveJitterCorridor(char[][] tiles, int[] from, int[] to, Random rng) {
+    private void carveJitterCorridor(BitGrid tiles, int[] from, int[] to, Random rng) {
         int x = from[0];
         int y = from[1];
-        tiles[y][x] = FLOOR;
+        tiles.setFloor(x, y);
         while (Math.abs(x - to[0]) + Math.abs(y - to[1]) > 0) {
             if (rng.nextBoolean()) {
                 x += Integer.signum(to[0] - x);
@@ -1025,130 +1165,93 @@ public final class DungeonMapSimulator {
                 y += Integer.signum(to[1] - y);
             }
             if (rng.nextDouble() < 0.3) {
-                x = Math.max(1, Math.min(tiles[0].length - 2, x + rng.nextInt(3) - 1));
-                y = Math.max(1, Math.min(tiles.length - 2, y + rng.nextInt(3) - 1));
+                x = Math.max(1, Math.min(tiles.width() - 2, x + rng.nextInt(3) - 1));
+                y = Math.max(1, Math.min(tiles.height() - 2, y + rng.nextInt(3) - 1));
             }
-            tiles[y][x] = FLOOR;
+            tiles.setFloor(x, y);
         }
     }
 
-    private void padWalls(char[][] tiles) {
-        int height = tiles.length;
-        int width = tiles[0].length;
+    private void padWalls(BitGrid tiles) {
+        int height = tiles.height();
+        int width = tiles.width();
         for (int y = 0; y < height; y++) {
-            tiles[y][0] = WALL;
-            tiles[y][width - 1] = WALL;
+            tiles.setWall(0, y);
+            tiles.setWall(width - 1, y);
         }
         for (int x = 0; x < width; x++) {
-            tiles[0][x] = WALL;
-            tiles[height - 1][x] = WALL;
-        }
-    }
-
-    private boolean placeVault(char[][] layout, MapDefinition vault, Random rng) {
-        char[][] tiles = vault.toTileArray();
-        int vH = tiles.length;
-        int vW = tiles[0].length;
-        int maxX = layout[0].length - vW;
-        int maxY = layout.length - vH;
-        if (maxX < 0 || maxY < 0) {
-            return false;
-        }
-
-        for (int attempt = 0; attempt < 25; attempt++) {
-            int offsetX = rng.nextInt(maxX + 1);
-            int offsetY = rng.nextInt(maxY + 1);
-            if (!canPlaceVault(layout, tiles, offsetX, offsetY)) {
-                continue;
-            }
-            overlayVault(layout, tiles, offsetX, offsetY);
-            return true;
-        }
-        return false;
-    }
-
-    private boolean canPlaceVault(char[][] layout, char[][] vault, int offsetX, int offsetY) {
-        for (int y = 0; y < vault.length; y++) {
-            for (int x = 0; x < vault[y].length; x++) {
-                char tile = vault[y][x];
-                if (tile == ' ') {
-                    continue;
-                }
-                if (layout[offsetY + y][offsetX + x] == LUA_MARKER) {
-                    return false;
-                }
-            }
+            tiles.setWall(x, 0);
+            tiles.setWall(x, height - 1);
         }
-        return true;
     }
 
-    private void overlayVault(char[][] layout, char[][] vault, int offsetX, int offsetY) {
-        for (int y = 0; y < vault.length; y++) {
-            for (int x = 0; x < vault[y].length; x++) {
-                char tile = vault[y][x];
-                if (tile == ' ') {
-                    continue;
+    private void scatter(BitGrid tiles, Random rng, double chance) {
+        for (int y = 0; y < tiles.height(); y++) {
+            for (int x = 0; x < tiles.width(); x++) {
+                if (!tiles.isWall(x, y) && rng.nextDouble() < chance) {
+                    tiles.setWall(x, y);
                 }
-                layout[offsetY + y][offsetX + x] = tile;
             }
         }
     }
 
-    private void scatter(char[][] tiles, Random rng, char target, char replacement, double chance) {
-        for (int y = 0; y < tiles.length; y++) {
-            for (int x = 0; x < tiles[y].length; x++) {
-                if (tiles[y][x] == target && rng.nextDouble() < chance) {
-                    tiles[y][x] = replacement;
-                }
-            }
+    private void floodFillConnectivity(Grid tiles) {
+        int width = tiles.width();
+        int cells = width * tiles.height();
+        int start = 0;
+        while (start < cells && tiles.at(start) != FLOOR) {
+            start++;
         }
-    }
-
-    private void floodFillConnectivity(char[][] tiles) {
-        List<int[]> floors = collectTiles(tiles, FLOOR);
-        if (floors.isEmpty()) {
+        if (start == cells) {
             return;
         }
-        Set<String> seen = new HashSet<>();
-        Queue<int[]> queue = new ArrayDeque<>();
-        queue.add(floors.get(0));
-        while (!queue.isEmpty()) {
-            int[] cur = queue.remove();
-            String key = cur[0] + "," + cur[1];
-            if (seen.contains(key)) {
-                continue;
+        boolean[] seen = new boolean[cells];
+        int[] queue = new int[cells];
+        int head = 0;
+        int tail = 0;
+        seen[start] = true;
+        queue[tail++] = start;
+        while (head < tail) {
+            int cur = queue[head++];
+            int x = cur % width;
+            if (x > 0) {
+                tail = visit(tiles, cur - 1, seen, queue, tail);
             }
-            seen.add(key);
-            for (int dy = -1; dy <= 1; dy++) {
-                for (int dx = -1; dx <= 1; dx++) {
-                    if (Math.abs(dx) + Math.abs(dy) != 1) {
-                        continue;
-                    }
-                    int nx = cur[0] + dx;
-                    int ny = cur[1] + dy;
-                    if (ny < 0 || ny >= tiles.length || nx < 0 || nx >= tiles[0].length) {
-                        continue;
-                    }
-                    if (tiles[ny][nx] == FLOOR || tiles[ny][nx] == STAIRS_DOWN || tiles[ny][nx] == STAIRS_UP) {
-                        queue.add(new int[]{nx, ny});
-                    }
-                }
+            if (x < width - 1) {
+                tail = visit(tiles, cur + 1, seen, queue, tail);
+            }
+            if (cur >= width) {
+                tail = visit(tiles, cur - width, seen, queue, tail);
+            }
+            if (cur + width < cells) {
+                tail = visit(tiles, cur + width, seen, queue, tail);
             }
         }
 
-        for (int y = 0; y < tiles.length; y++) {
-            for (int x = 0; x < tiles[y].length; x++) {
-                if ((tiles[y][x] == FLOOR || tiles[y][x] == LUA_MARKER) && !seen.contains(x + "," + y)) {
-                    tiles[y][x] = WALL;
-                }
+        for (int i = 0; i < cells; i++) {
+            char tile = tiles.at(i);
+            if ((tile == FLOOR || tile == LUA_MARKER) && !seen[i]) {
+                tiles.setAt(i, WALL);
             }
         }
     }
 
-    private boolean hasWalkable(char[][] tiles) {
-        for (int y = 0; y < tiles.length; y++) {
-            for (int x = 0; x < tiles[y].length; x++) {
-                char t = tiles[y][x];
+    private static int visit(Grid tiles, int cell, boolean[] seen, int[] queue, int tail) {
+        if (seen[cell]) {
+            return tail;
+        }
+        char tile = tiles.at(cell);
+        if (tile == FLOOR || tile == STAIRS_DOWN || tile == STAIRS_UP) {
+            seen[cell] = true;
+            queue[tail++] = cell;
+        }
+        return tail;
+    }
+
+    private boolean hasWalkable(Grid tiles) {
+        for (int y = 0; y < tiles.height(); y++) {
+            for (int x = 0; x < tiles.width(); x++) {
+                char t = tiles.get(x, y);
                 if (t == FLOOR || t == STAIRS_DOWN || t == STAIRS_UP || t == LUA_MARKER) {
                     return true;
                 }
@@ -1157,7 +1260,7 @@ public final class DungeonMapSimulator {
         return false;
     }
 
-    private void applyDepthMarkers(char[][] tiles, int depth) {
+    private void applyDepthMarkers(Grid tiles, int depth) {
         List<int[]> floorTiles = collectTiles(tiles, FLOOR);
         if (floorTiles.isEmpty()) {
             floorTiles = collectNonWallTiles(tiles);
@@ -1172,11 +1275,11 @@ public final class DungeonMapSimulator {
         placeSymbol(tiles, floorTiles.get(downIndex), STAIRS_DOWN);
     }
 
-    private List<int[]> collectNonWallTiles(char[][] tiles) {
+    private List<int[]> collectNonWallTiles(Grid tiles) {
         List<int[]> coords = new ArrayList<>();
-        for (int y = 0; y < tiles.length; y++) {
-            for (int x = 0; x < tiles[y].length; x++) {
-                if (tiles[y][x] != WALL) {
+        for (int y = 0; y < tiles.height(); y++) {
+            for (int x = 0; x < tiles.width(); x++) {
+                if (tiles.get(x, y) != WALL) {
                     coords.add(new int[]{x, y});
                 }
             }
@@ -1184,11 +1287,11 @@ public final class DungeonMapSimulator {
         return coords;
     }
 
-    private List<int[]> collectTiles(char[][] tiles, char target) {
+    private List<int[]> collectTiles(Grid tiles, char target) {
         List<int[]> coords = new ArrayList<>();
-        for (int y = 0; y < tiles.length; y++) {
-            for (int x = 0; x < tiles[y].length; x++) {
-                if (tiles[y][x] == target) {
+        for (int y = 0; y < tiles.height(); y++) {
+            for (int x = 0; x < tiles.width(); x++) {
+                if (tiles.get(x, y) == target) {
                     coords.add(new int[]{x, y});
                 }
             }
@@ -1196,11 +1299,11 @@ public final class DungeonMapSimulator {
         return coords;
     }
 
-    private void placeSymbol(char[][] tiles, int[] coord, char symbol) {
-        tiles[coord[1]][coord[0]] = symbol;
+    private void placeSymbol(Grid tiles, int[] coord, char symbol) {
+        tiles.set(coord[0], coord[1], symbol);
     }
 
-    private void applyDluaOverlay(char[][] tiles, List<Path> dluaFiles, Random rng) throws IOException {
+    private void applyDluaOverlay(Grid tiles, List<Path> dluaFiles, Random rng) throws IOException {
         if (dluaFiles.isEmpty()) {
             return;
         }
@@ -1221,7 +1324,7 @@ public final class DungeonMapSimulator {
         }
     }
 
-    private boolean tryExecuteDluaWithLuaJ(char[][] tiles, List<Path> dluaFiles, Random rng) {
+    private boolean tryExecuteDluaWithLuaJ(Grid tiles, List<Path> dluaFiles, Random rng) {
         try {
             ClassLoader loader = ensureLuaJClassLoader();
             if (loader == null) {
@@ -1243,8 +1346,8 @@ public final class DungeonMapSimulator {
             java.lang.reflect.Method valueOfInt = luaValueClass.getMethod("valueOf", int.class);
             setMethod.invoke(globals, "tile", tileApi);
             setMethod.invoke(globals, "rng", rngApi);
-            setMethod.invoke(globals, "WIDTH", valueOfInt.invoke(null, tiles[0].length));
-            setMethod.invoke(globals, "HEIGHT", valueOfInt.invoke(null, tiles.length));
+            setMethod.invoke(globals, "WIDTH", valueOfInt.invoke(null, tiles.width()));
+            setMethod.invoke(globals, "HEIGHT", valueOfInt.invoke(null, tiles.height()));
 
             java.lang.reflect.Method load = globalsClass.getMethod("load", InputStream.class,
                     String.class, String.class, globalsClass);
@@ -1315,34 +1418,34 @@ public final class DungeonMapSimulator {
      * Lightweight API surface exposed to dlua scripts when LuaJ is available.
      */
     public static final class TileApi {
-        private final char[][] tiles;
+        private final Grid tiles;
         private final Random rng;
 
-        TileApi(char[][] tiles, Random rng) {
+        TileApi(Grid tiles, Random rng) {
             this.tiles = tiles;
             this.rng = rng;
         }
 
         public int width() {
-            return tiles[0].length;
+            return tiles.width();
         }
 
         public int height() {
-            return tiles.length;
+            return tiles.height();
         }
 
         public void set(int x, int y, String glyph) {
             if (!inBounds(x, y)) {
                 return;
             }
-            tiles[y][x] = normalize(glyph);
+            tiles.set(x, y, normalize(glyph));
         }
 
         public void fill(int x1, int y1, int x2, int y2, String glyph) {
             char value = normalize(glyph);
             for (int y = Math.max(0, Math.min(y1, y2)); y <= Math.min(height() - 1, Math.max(y1, y2)); y++) {
                 for (int x = Math.max(0, Math.min(x1, x2)); x <= Math.min(width() - 1, Math.max(x1, x2)); x++) {
-                    tiles[y][x] = value;
+                    tiles.set(x, y, value);
                 }
             }
         }
@@ -1355,7 +1458,7 @@ public final class DungeonMapSimulator {
                     int dx = x - centerX;
                     int dy = y - centerY;
                     if ((dx * dx + dy * dy) <= r2) {
-                        tiles[y][x] = value;
+                        tiles.set(x, y, value);
                     }
                 }
             }
@@ -1366,14 +1469,14 @@ public final class DungeonMapSimulator {
             for (int y = 0; y < height(); y++) {
                 for (int x = 0; x < width(); x++) {
                     if (rng.nextDouble() < density) {
-                        tiles[y][x] = value;
+                        tiles.set(x, y, value);
                     }
                 }
             }
         }
 
         private boolean inBounds(int x, int y) {
-            return x >= 0 && y >= 0 && y < tiles.length && x < tiles[y].length;
+            return x >= 0 && y >= 0 && y < tiles.height() && x < tiles.width();
         }
 
         private char normalize(String glyph) {
@@ -1417,11 +1520,44 @@ public final class DungeonMapSimulator {
         return render(tiles, true);
     }
 
+    /**
+     * Render a grid to a human-readable string.
+     */
+    public String render(Grid grid) {
+        return render(grid, true);
+    }
+
+    /**
+     * Render a grid to a human-readable string with optional border.
+     */
+    public String render(Grid grid, boolean includeBorder) {
+        String separator = System.lineSeparator();
+        StringBuilder out = new StringBuilder((grid.width() + 2 + separator.length()) * (grid.height() + 2));
+        String horizontal = "─".repeat(Math.max(0, grid.width()));
+        if (includeBorder) {
+            out.append('┌').append(horizontal).append('┐').append(separator);
+        }
+        for (int y = 0; y < grid.height(); y++) {
+            if (y > 0) {
+                out.append(separator);
+            }
+            if (includeBorder) {
+                out.append('│').append(grid.row(y)).append('│');
+            } else {
+                out.append(grid.row(y));
+            }
+        }
+        if (includeBorder) {
+            out.append(separator).append('└').append(horizontal).append('┘');
+        }
+        return out.toString();
+    }
+
     /**
      * Render a tile array to a human-readable string with optional border.
      */
     public String render(char[][] tiles, boolean includeBorder) {
-        String body = java.util.Arrays.stream(tiles)
+        String body = Arrays.stream(tiles)
                 .map(String::new)
                 .collect(Collectors.joining(System.lineSeparator()));
         if (!includeBorder) {
@@ -1431,7 +1567,7 @@ public final class DungeonMapSimulator {
         String horizontal = "─".repeat(Math.max(0, tiles[0].length));
         String top = "┌" + horizontal + "┐";
         String bottom = "└" + horizontal + "┘";
-        String middle = java.util.Arrays.stream(tiles)
+        String middle = Arrays.stream(tiles)
                 .map(String::new)
                 .map(row -> "│" + row + "│")
                 .collect(Collectors.joining(System.lineSeparator()));
@@ -14,7 +14,9 @@ public final class DungeonMapVisualizer {
         Map<String, String> flags = parseArgs(args);
         SimulationConfig config = buildConfig(flags);
 
-        DungeonMapSimulator simulator = new DungeonMapSimulator();
+        VaultLibrary.Holder library = VaultLibrary.lazy(config.sourceRoot(), config.vaultCache(),
+                config.vaultStorage());
+        DungeonMapSimulator simulator = new DungeonMapSimulator(library);
         DungeonMapSimulator.SimulationResult result = simulator.simulate(config);
 
         System.out.println("Dungeon depth : " + result.depth());
@@ -22,7 +24,10 @@ public final class DungeonMapVisualizer {
         System.out.println("Source        : " + result.source());
         System.out.println("Legend        : # wall, . floor, < up stairs, > down stairs, * dlua marker");
         System.out.println();
-        System.out.println(simulator.render(result.tiles()));
+        System.out.println(simulator.render(result.grid()));
+        if (Boolean.parseBoolean(flags.getOrDefault("vault-stats", "false"))) {
+            System.out.println("Vault rows    : " + library.get().rowStats());
+        }
     }
 
     private static SimulationConfig buildConfig(Map<String, String> flags) {
@@ -31,12 +36,20 @@ public final class DungeonMapVisualizer {
         builder.seed(parseLong(flags.getOrDefault("seed", "0"), 0L));
         builder.width(parseInt(flags.getOrDefault("width", "100"), 100));
         builder.height(parseInt(flags.getOrDefault("height", "100"), 100));
+        builder.layoutRetries(parseInt(flags.getOrDefault("layout-retries", "4"), 4));
+        builder.attemptWindow(parseInt(flags.getOrDefault("attempt-window", "0"), 0));
         Path sourceRoot = Path.of(flags.getOrDefault("source-root", "crawl-ref/source"));
         builder.sourceRoot(sourceRoot);
         Optional.ofNullable(flags.get("branch"))
                 .ifPresent(builder::branch);
         Optional.ofNullable(flags.get("map"))
                 .ifPresent(builder::mapName);
+        Optional.ofNullable(flags.get("vault-cache"))
+                .map(Path::of)
+                .ifPresent(builder::vaultCache);
+        Optional.ofNullable(flags.get("vault-storage"))
+                .map(DungeonMapVisualizer::parseStorageMode)
+                .ifPresent(builder::vaultStorage);
         return builder.build();
     }
 
@@ -51,6 +64,14 @@ public final class DungeonMapVisualizer {
         return parsed;
     }
 
+    private static VaultLibrary.StorageMode parseStorageMode(String value) {
+        try {
+            return VaultLibrary.StorageMode.valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException ex) {
+            return VaultLibrary.StorageMode.EAGER;
+        }
+    }
+
     private static int parseInt(String value, int fallback) {
         try {
             return Integer.parseInt(value);
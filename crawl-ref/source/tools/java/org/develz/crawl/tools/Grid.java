@@ -0,0 +1,127 @@
+package org.develz.crawl.tools;
+
+import java.util.Arrays;
+
+/**
+ * A level's tiles in one flat {@code byte[]}, row-major, cell ({@code x}, {@code y})
+ * at index {@code y * width + x}.
+ *
+ * ASCII glyphs are stored as themselves. The few non-ASCII glyphs a vault may
+ * bring in are stored as {@code 0x80 | i}, where {@code i} indexes this grid's
+ * own table of such glyphs, so at most 128 distinct ones fit in one grid.
+ * {@link #toCharArray()} gives the legacy {@code char[][]} form.
+ */
+public final class Grid {
+    private static final int MAX_EXTENDED = 0x80;
+
+    private final int width;
+    private final int height;
+    private final byte[] cells;
+    private char[] extended;
+    private int extendedCount;
+
+    /**
+     * A {@code width} x {@code height} grid with every cell set to {@code fill}.
+     */
+    Grid(int width, int height, char fill) {
+        this.width = width;
+        this.height = height;
+        this.cells = new byte[width * height];
+        fill(fill);
+    }
+
+    public int width() {
+        return width;
+    }
+
+    public int height() {
+        return height;
+    }
+
+    public char get(int x, int y) {
+        return decode(cells[y * width + x]);
+    }
+
+    void set(int x, int y, char glyph) {
+        cells[y * width + x] = encode(glyph);
+    }
+
+    int index(int x, int y) {
+        return y * width + x;
+    }
+
+    /**
+     * The glyph at flat index {@code index}.
+     */
+    char at(int index) {
+        return decode(cells[index]);
+    }
+
+    void setAt(int index, char glyph) {
+        cells[index] = encode(glyph);
+    }
+
+    /**
+     * The backing array, row-major; an ASCII glyph {@code c} is stored as {@code (byte) c}.
+     */
+    byte[] cells() {
+        return cells;
+    }
+
+    void fill(char glyph) {
+        Arrays.fill(cells, encode(glyph));
+    }
+
+    /**
+     * A new {@code char[][]} holding the same glyphs; later changes to either side
+     * are not reflected in the other.
+     */
+    public char[][] toCharArray() {
+        char[][] tiles = new char[height][width];
+        for (int y = 0; y < height; y++) {
+            char[] row = tiles[y];
+            int offset = y * width;
+            for (int x = 0; x < width; x++) {
+                row[x] = decode(cells[offset + x]);
+            }
+        }
+        return tiles;
+    }
+
+    /**
+     * Row {@code y} as a string.
+     */
+    public String row(int y) {
+        char[] row = new char[width];
+        int offset = y * width;
+        for (int x = 0; x < width; x++) {
+            row[x] = decode(cells[offset + x]);
+        }
+        return new String(row);
+    }
+
+    private char decode(byte code) {
+        return code >= 0 ? (char) code : extended[code & 0x7f];
+    }
+
+    private byte encode(char glyph) {
+        if (glyph < 0x80) {
+            return (byte) glyph;
+        }
+        for (int i = 0; i < extendedCount; i++) {
+            if (extended[i] == glyph) {
+                return (byte) (0x80 | i);
+            }
+        }
+        if (extendedCount == MAX_EXTENDED) {
+            throw new IllegalStateException("more than " + MAX_EXTENDED + " non-ASCII glyphs in one grid");
+        }
+        if (extended == null) {
+            extended = new char[8];
+        } else if (extendedCount == extended.length) {
+            extended = Arrays.copyOf(extended, Math.min(MAX_EXTENDED, extended.length * 2));
+        }
+        extended[extendedCount] = glyph;
+        return (byte) (0x80 | extendedCount++);
+    }
+}
@@ -0,0 +1,254 @@
+package org.develz.crawl.tools;
+
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Representation of a single MAP/ENDMAP block discovered in a .des file.
+ *
+ * The header (name, place hints, selection directives, dimensions) is always
+ * resident. The MAP body is either kept as rows from parse time, decoded from the
+ * memory-mapped .des file the first time it is needed (lazy libraries), or read
+ * in place from a shared {@link VaultArena} (arena libraries).
+ */
+final class MapDefinition {
+    private final String name;
+    private final Path source;
+    private final String relativeSource;
+    private final String qualifiedName;
+    private final int index;
+    private final Set<String> placeHints;
+    private final MapDirectives directives;
+    private final int width;
+    private final int height;
+    private final MappedDesFile file;
+    private final int bodyOffset;
+    private final int bodyLength;
+    private final VaultArena arena;
+    private final int arenaRow;
+    private volatile List<String> rows;
+    private volatile VaultTiles tiles;
+    private volatile VaultTiles[] variants;
+
+    /**
+     * @param index position of the map among those of its source file
+     * @param file  mapped source file to decode rows from, or null when {@code rows} is supplied
+     * @param rows  the MAP rows, or null to load them lazily from {@code file}
+     */
+    MapDefinition(String name, Path source, String relativeSource, int index, Set<String> placeHints,
+                  MapDirectives directives, int width, int height, MappedDesFile file, int bodyOffset, int bodyLength,
+                  List<String> rows) {
+        this.name = name;
+        this.source = source;
+        this.relativeSource = relativeSource;
+        this.qualifiedName = relativeSource + ':' + name;
+        this.index = index;
+        this.placeHints = Collections.unmodifiableSet(placeHints);
+        this.directives = directives;
+        this.width = width;
+        this.height = height;
+        this.file = file;
+        this.bodyOffset = bodyOffset;
+        this.bodyLength = bodyLength;
+        this.arena = null;
+        this.arenaRow = 0;
+        this.rows = rows != null ? Collections.unmodifiableList(rows) : null;
+    }
+
+    /**
+     * Copy of {@code header} whose rows start at entry {@code arenaRow} of {@code arena}'s row table.
+     */
+    MapDefinition(MapDefinition header, VaultArena arena, int arenaRow) {
+        this.name = header.name;
+        this.source = header.source;
+        this.relativeSource = header.relativeSource;
+        this.qualifiedName = header.qualifiedName;
+        this.index = header.index;
+        this.placeHints = header.placeHints;
+        this.directives = header.directives;
+        this.width = header.width;
+        this.height = header.height;
+        this.file = null;
+        this.bodyOffset = header.bodyOffset;
+        this.bodyLength = header.bodyLength;
+        this.arena = arena;
+        this.arenaRow = arenaRow;
+        this.rows = null;
+    }
+
+    String name() {
+        return name;
+    }
+
+    Path source() {
+        return source;
+    }
+
+    String relativeSource() {
+        return relativeSource;
+    }
+
+    /**
+     * The source file relative to dat/des and the map name, as "file:name". Unlike
+     * the name alone this tells apart maps of different files that share a name,
+     * such as the anonymous maps each file numbers from 1.
+     */
+    String qualifiedName() {
+        return qualifiedName;
+    }
+
+    /**
+     * Position of this map among the maps of its source file.
+     */
+    int index() {
+        return index;
+    }
+
+    Set<String> placeHints() {
+        return placeHints;
+    }
+
+    MapDirectives directives() {
+        return directives;
+    }
+
+    int bodyOffset() {
+        return bodyOffset;
+    }
+
+    int bodyLength() {
+        return bodyLength;
+    }
+
+    /**
+     * True once the MAP body is resident (always the case for eager and arena libraries).
+     */
+    boolean rowsLoaded() {
+        return rows != null || arena != null;
+    }
+
+    /**
+     * The MAP rows. Rows decoded from an arena are not retained.
+     */
+    List<String> rows() {
+        if (arena != null) {
+            return Collections.unmodifiableList(arena.rows(arenaRow, height));
+        }
+        List<String> loaded = rows;
+        if (loaded == null) {
+            synchronized (this) {
+                loaded = rows;
+                if (loaded == null) {
+                    loaded = Collections.unmodifiableList(file.rows(this));
+                    rows = loaded;
+                }
+            }
+        }
+        return loaded;
+    }
+
+    int height() {
+        return height;
+    }
+
+    int width() {
+        return width;
+    }
+
+    /**
+     * Glyph at ({@code x}, {@code y}) of the body, with short rows padded by ' '.
+     * Arena-backed maps read it straight from the arena.
+     */
+    char tileAt(int x, int y) {
+        if (arena != null) {
+            return arena.tileAt(arenaRow, x, y);
+        }
+        String row = rows().get(y);
+        return x < row.length() ? row.charAt(x) : ' ';
+    }
+
+    /**
+     * Tile grid and solid-cell mask, built on first use and then shared.
+     */
+    VaultTiles tiles() {
+        VaultTiles built = tiles;
+        if (built == null) {
+            synchronized (this) {
+                built = tiles;
+                if (built == null) {
+                    built = new VaultTiles(toTileArray(), width);
+                    tiles = built;
+                }
+            }
+        }
+        return built;
+    }
+
+    /**
+     * The orientations this map may be placed in, as allowed by its no_rotate,
+     * no_hmirror and no_vmirror tags; {@link VaultOrientation#NORMAL} comes first.
+     */
+    List<VaultOrientation> orientations() {
+        return VaultOrientation.allowedFor(directives);
+    }
+
+    /**
+     * Whether this map may be placed a quarter turn from its source orientation.
+     */
+    boolean rotatable() {
+        List<VaultOrientation> allowed = orientations();
+        return allowed.get(allowed.size() - 1).rotates();
+    }
+
+    /**
+     * Tile grid and solid-cell mask turned to {@code orientation}, built from
+     * {@link #tiles()} on first use and then shared.
+     */
+    VaultTiles tiles(VaultOrientation orientation) {
+        if (orientation == VaultOrientation.NORMAL) {
+            return tiles();
+        }
+        int slot = orientation.ordinal();
+        VaultTiles[] built = variants;
+        if (built == null || built[slot] == null) {
+            synchronized (this) {
+                built = variants;
+                if (built == null || built[slot] == null) {
+                    // Copy on write, so readers only ever see fully filled slots.
+                    VaultTiles[] next = built == null ? new VaultTiles[VaultOrientation.values().length]
+                            : built.clone();
+                    VaultTiles normal = tiles();
+                    char[][] turned = orientation.apply(normal.tiles(), normal.width());
+                    next[slot] = new VaultTiles(turned, orientation.rotates() ? normal.height() : normal.width());
+                    variants = next;
+                    built = next;
+                }
+            }
+        }
+        return built[slot];
+    }
+
+    char[][] toTileArray() {
+        int h = height();
+        int w = width();
+        char[][] data = new char[h][w];
+        if (arena != null) {
+            for (int y = 0; y < h; y++) {
+                for (int x = 0; x < w; x++) {
+                    data[y][x] = arena.tileAt(arenaRow, x, y);
+                }
+            }
+            return data;
+        }
+        List<String> body = rows();
+        for (int y = 0; y < h; y++) {
+            String row = body.get(y);
+            for (int x = 0; x < w; x++) {
+                data[y][x] = x < row.length() ? row.charAt(x) : ' ';
+            }
+        }
+        return data;
+    }
+}
@@ -0,0 +1,231 @@
+package org.develz.crawl.tools;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The selection directives of a map: DEPTH: (or the file's default-depth:),
+ * WEIGHT:, CHANCE:, TAGS: and ORIENT:, in parsed form.
+ *
+ * Weights and chances may be conditional on the branch and level, so they are
+ * resolved per placement rather than stored as a single number. Chances are kept
+ * in units of 1/{@link #CHANCE_SCALE}, as Crawl does. Tags are held as a bitset
+ * over {@link TagBits} positions.
+ */
+final class MapDirectives {
+    /** Crawl's selection weight for maps without a WEIGHT: directive. */
+    static final int DEFAULT_WEIGHT = 10;
+    /** CHANCE: values are out of this many; "5%" is 500. */
+    static final int CHANCE_SCALE = 10000;
+
+    static final MapDirectives NONE = new MapDirectives(DepthRanges.NONE, ConditionalValue.NONE,
+            ConditionalValue.NONE, TagBits.EMPTY, Orient.NONE);
+
+    /**
+     * ORIENT: values; {@link #NONE} when the map has no ORIENT: directive.
+     *
+     * The compass values say which side (or corner) of the level the vault lies
+     * against: {@link #dx()} is -1 for the west edge, 1 for the east edge and 0
+     * when the column is free, and {@link #dy()} likewise for north and south.
+     * ENCOMPASS and CENTRE put the vault in the middle of the level.
+     */
+    enum Orient {
+        NONE(0, 0, false), FLOAT(0, 0, false), ENCOMPASS(0, 0, true), CENTRE(0, 0, true),
+        NORTH(0, -1, false), SOUTH(0, 1, false), EAST(1, 0, false), WEST(-1, 0, false),
+        NORTHEAST(1, -1, false), NORTHWEST(-1, -1, false), SOUTHEAST(1, 1, false), SOUTHWEST(-1, 1, false);
+
+        private final int dx;
+        private final int dy;
+        private final boolean centred;
+
+        Orient(int dx, int dy, boolean centred) {
+            this.dx = dx;
+            this.dy = dy;
+            this.centred = centred;
+        }
+
+        int dx() {
+            return dx;
+        }
+
+        int dy() {
+            return dy;
+        }
+
+        /**
+         * True for ENCOMPASS and CENTRE.
+         */
+        boolean centred() {
+            return centred;
+        }
+
+        /**
+         * True for the compass values.
+         */
+        boolean directional() {
+            return dx != 0 || dy != 0;
+        }
+
+        /**
+         * The compass value for side {@code dx}, {@code dy}; not both 0.
+         */
+        static Orient toward(int dx, int dy) {
+            for (Orient orient : values()) {
+                if (orient.dx == dx && orient.dy == dy && orient.directional()) {
+                    return orient;
+                }
+            }
+            throw new IllegalArgumentException("no side " + dx + ", " + dy);
+        }
+
+        static Orient parse(String text) {
+            String value = text.trim().toUpperCase();
+            if (value.equals("CENTER")) {
+                return CENTRE;
+            }
+            for (Orient orient : values()) {
+                if (orient != NONE && orient.name().equals(value)) {
+                    return orient;
+                }
+            }
+            return NONE;
+        }
+    }
+
+    private final DepthRanges depths;
+    private final ConditionalValue weights;
+    private final ConditionalValue chances;
+    private final long[] tagBits;
+    private final Orient orient;
+
+    private MapDirectives(DepthRanges depths, ConditionalValue weights, ConditionalValue chances,
+                  long[] tagBits, Orient orient) {
+        this.depths = depths;
+        this.weights = weights;
+        this.chances = chances;
+        this.tagBits = tagBits;
+        this.orient = orient;
+    }
+
+    /**
+     * Build directives from raw directive values; null means the directive was absent.
+     */
+    static MapDirectives of(DepthRanges depths, String weight, String chance,
+                            Collection<String> tags, String orient) {
+        ConditionalValue weights = weight == null ? ConditionalValue.NONE
+                : ConditionalValue.parse(weight, MapDirectives::parseWeight);
+        ConditionalValue chances = chance == null ? ConditionalValue.NONE
+                : ConditionalValue.parse(chance, MapDirectives::parseChance);
+        Orient parsedOrient = orient == null ? Orient.NONE : Orient.parse(orient);
+        if (depths.isEmpty() && weights.isEmpty() && chances.isEmpty() && tags.isEmpty()
+                && parsedOrient == Orient.NONE) {
+            return NONE;
+        }
+        return new MapDirectives(depths, weights, chances, TagBits.of(tags), parsedOrient);
+    }
+
+    private static int parseWeight(String text) {
+        try {
+            return Math.max(0, Integer.parseInt(text));
+        } catch (NumberFormatException malformed) {
+            return -1;
+        }
+    }
+
+    /**
+     * "N%" (fractions allowed) or a raw value out of {@link #CHANCE_SCALE}.
+     */
+    private static int parseChance(String text) {
+        try {
+            if (text.endsWith("%")) {
+                BigDecimal percent = new BigDecimal(text.substring(0, text.length() - 1).trim());
+                return Math.min(CHANCE_SCALE, Math.max(0,
+                        percent.movePointRight(2).setScale(0, RoundingMode.HALF_UP).intValue()));
+            }
+            return Math.min(CHANCE_SCALE, Math.max(0, Integer.parseInt(text)));
+        } catch (NumberFormatException | ArithmeticException malformed) {
+            return -1;
+        }
+    }
+
+    /**
+     * True when the map is chosen by depth (it has a DEPTH: or default-depth:).
+     */
+    boolean hasDepths() {
+        return !depths.isEmpty();
+    }
+
+    DepthRanges depths() {
+        return depths;
+    }
+
+    int weightAt(String branch, int depth) {
+        return weights.valueAt(branch, depth, DEFAULT_WEIGHT);
+    }
+
+    /**
+     * Chance, out of {@link #CHANCE_SCALE}, of placing the map on the given level;
+     * 0 if it has no CHANCE: entry for it.
+     */
+    int chanceAt(String branch, int depth) {
+        return chances.valueAt(branch, depth, 0);
+    }
+
+    /**
+     * Tag names, in {@link TagBits} order rather than declaration order.
+     */
+    List<String> tags() {
+        return Collections.unmodifiableList(TagBits.names(tagBits));
+    }
+
+    /**
+     * The tags as a bitset over {@link TagBits} positions. Shared; do not modify.
+     */
+    long[] tagBits() {
+        return tagBits;
+    }
+
+    boolean hasTag(String tag) {
+        return TagBits.contains(tagBits, TagBits.bitOf(tag));
+    }
+
+    Orient orient() {
+        return orient;
+    }
+
+    void write(DataOutput out) throws IOException {
+        depths.write(out);
+        weights.write(out);
+        chances.write(out);
+        List<String> tags = TagBits.names(tagBits);
+        out.writeInt(tags.size());
+        for (String tag : tags) {
+            out.writeUTF(tag);
+        }
+        out.writeByte(orient.ordinal());
+    }
+
+    static MapDirectives read(DataInput in) throws IOException {
+        DepthRanges depths = DepthRanges.read(in);
+        ConditionalValue weights = ConditionalValue.read(in);
+        ConditionalValue chances = ConditionalValue.read(in);
+        int tagCount = in.readInt();
+        List<String> tags = new ArrayList<>(tagCount);
+        for (int i = 0; i < tagCount; i++) {
+            tags.add(in.readUTF());
+        }
+        Orient orient = Orient.values()[in.readUnsignedByte()];
+        if (depths.isEmpty() && weights.isEmpty() && chances.isEmpty() && tags.isEmpty()
+                && orient == Orient.NONE) {
+            return NONE;
+        }
+        return new MapDirectives(depths, weights, chances, TagBits.of(tags), orient);
+    }
+}
@@ -0,0 +1,124 @@
+package org.develz.crawl.tools;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * Read-only memory-mapped view of a .des file, shared by every lazily loaded
+ * {@link MapDefinition} that came from it. The file is only mapped the first
+ * time one of its map bodies is materialised.
+ *
+ * The maps only hold the byte ranges of their bodies, so those ranges are only
+ * trusted while the file is the one they were taken from: the same size, and
+ * either the same modification time or, failing that, the same CRC32C as when
+ * the library was loaded. A file that has changed is parsed again instead, and
+ * each map takes its rows from the map at the same position in the new parse,
+ * provided that map still has the same name and dimensions.
+ */
+final class MappedDesFile {
+    private final Path path;
+    private final String relativeSource;
+    private final long expectedSize;
+    private final long expectedModified;
+    private final long expectedChecksum;
+    private volatile MappedByteBuffer buffer;
+    /** The file parsed again, set instead of {@link #buffer} when it changed. */
+    private volatile List<MapDefinition> reparsed;
+
+    /**
+     * @param expectedModified the file's modification time in milliseconds when its maps were parsed
+     * @param expectedChecksum the CRC32C of its contents then
+     */
+    MappedDesFile(Path path, String relativeSource, long expectedSize, long expectedModified,
+                  long expectedChecksum) {
+        this.path = path;
+        this.relativeSource = relativeSource;
+        this.expectedSize = expectedSize;
+        this.expectedModified = expectedModified;
+        this.expectedChecksum = expectedChecksum;
+    }
+
+    /**
+     * Decode the rows of {@code map}, a map parsed from this file. Rows are
+     * separated by \n, \r or \r\n, as in the parser.
+     */
+    List<String> rows(MapDefinition map) {
+        open();
+        List<MapDefinition> current = reparsed;
+        if (current != null) {
+            return reparsedRows(current, map);
+        }
+        int height = map.height();
+        int length = map.bodyLength();
+        List<String> rows = new ArrayList<>(height);
+        if (height == 0) {
+            return rows;
+        }
+        byte[] body = new byte[length];
+        buffer.get(map.bodyOffset(), body, 0, length);
+        int start = 0;
+        for (int row = 0; row < height; row++) {
+            int end = start;
+            while (end < length && body[end] != '\n' && body[end] != '\r') {
+                end++;
+            }
+            rows.add(new String(body, start, end - start, StandardCharsets.UTF_8));
+            start = end + 1;
+            if (end < length && body[end] == '\r' && start < length && body[start] == '\n') {
+                start++;
+            }
+        }
+        return rows;
+    }
+
+    private List<String> reparsedRows(List<MapDefinition> current, MapDefinition map) {
+        int index = map.index();
+        if (index < current.size()) {
+            MapDefinition now = current.get(index);
+            if (now.name().equals(map.name()) && now.width() == map.width() && now.height() == map.height()) {
+                return now.rows();
+            }
+        }
+        throw new UncheckedIOException(new IOException(path + " changed since the vault library was loaded"
+                + " and no longer holds map " + map.name() + " as it was; reload the library"));
+    }
+
+    private void open() {
+        if (buffer != null || reparsed != null) {
+            return;
+        }
+        synchronized (this) {
+            if (buffer != null || reparsed != null) {
+                return;
+            }
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                if (channel.size() == expectedSize) {
+                    MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, expectedSize);
+                    if (Files.getLastModifiedTime(path).toMillis() == expectedModified
+                            || checksum(mapped) == expectedChecksum) {
+                        buffer = mapped;
+                        return;
+                    }
+                }
+                reparsed = DesParser.parse(path, relativeSource, Files.readAllBytes(path));
+            } catch (IOException failure) {
+                throw new UncheckedIOException(failure);
+            }
+        }
+    }
+
+    private static long checksum(MappedByteBuffer mapped) {
+        CRC32C crc = new CRC32C();
+        crc.update(mapped.duplicate());
+        return crc.getValue();
+    }
+}
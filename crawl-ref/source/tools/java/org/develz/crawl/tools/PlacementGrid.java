@@ -0,0 +1,177 @@
+package org.develz.crawl.tools;
+
+import java.util.Random;
+
+/**
+ * Vault placement over one level layout.
+ *
+ * The cells already reserved for other vaults, which no part of a vault's
+ * footprint may overlap, are kept in a cell mask summarised by a summed-area
+ * table, so whether a footprint is free is four lookups. Every valid offset can
+ * therefore be found cheaply, and one is drawn uniformly. The table is rebuilt
+ * lazily the next time it is needed after the reservations change.
+ */
+final class PlacementGrid {
+    private final Grid layout;
+    private final int width;
+    private final int height;
+    private final SummedMask reservedCells;
+
+    PlacementGrid(Grid layout) {
+        this.layout = layout;
+        this.height = layout.height();
+        this.width = layout.width();
+        this.reservedCells = new SummedMask(new CellMask(width, height));
+    }
+
+    int width() {
+        return width;
+    }
+
+    int height() {
+        return height;
+    }
+
+    /**
+     * Number of reserved cells in the {@code w} x {@code h} rectangle at ({@code x}, {@code y}).
+     */
+    int reservedIn(int x, int y, int w, int h) {
+        return reservedCells.count(x, y, w, h);
+    }
+
+    boolean fits(VaultTiles vault, int x, int y) {
+        return reservedIn(x, y, vault.width(), vault.height()) == 0;
+    }
+
+    /**
+     * Pick uniformly among every offset at which {@code vault} fits and that
+     * {@code orient} allows, or return null if there is none. The result is {x, y}.
+     *
+     * A compass ORIENT: pins the vault against that edge of the level, or both
+     * edges of a corner, leaving it free along the other axis; ENCOMPASS and CENTRE
+     * allow only the middle offset, since a simulated level need not be the size
+     * of an encompassing vault.
+     */
+    int[] sample(VaultTiles vault, MapDirectives.Orient orient, Random rng) {
+        int spanX = width - vault.width() + 1;
+        int spanY = height - vault.height() + 1;
+        if (spanX <= 0 || spanY <= 0) {
+            return null;
+        }
+        int fromX = first(spanX, orient.dx(), orient.centred());
+        int fromY = first(spanY, orient.dy(), orient.centred());
+        int rangeX = last(spanX, orient.dx(), orient.centred()) - fromX + 1;
+        int rangeY = last(spanY, orient.dy(), orient.centred()) - fromY + 1;
+        if (reservedIn(0, 0, width, height) == 0) {
+            int pick = rng.nextInt(rangeX * rangeY);
+            return new int[] {fromX + pick % rangeX, fromY + pick / rangeX};
+        }
+        int[] valid = new int[rangeX * rangeY];
+        int count = 0;
+        for (int y = 0; y < rangeY; y++) {
+            for (int x = 0; x < rangeX; x++) {
+                if (fits(vault, fromX + x, fromY + y)) {
+                    valid[count++] = y * rangeX + x;
+                }
+            }
+        }
+        if (count == 0) {
+            return null;
+        }
+        int pick = valid[rng.nextInt(count)];
+        return new int[] {fromX + pick % rangeX, fromY + pick / rangeX};
+    }
+
+    /**
+     * Lowest offset along an axis with {@code span} offsets for an ORIENT: side of
+     * {@code side} (-1, 0 or 1) on that axis.
+     */
+    private static int first(int span, int side, boolean centred) {
+        return centred ? (span - 1) / 2 : side > 0 ? span - 1 : 0;
+    }
+
+    private static int last(int span, int side, boolean centred) {
+        return centred ? (span - 1) / 2 : side < 0 ? 0 : span - 1;
+    }
+
+    /**
+     * Claim the {@code w} x {@code h} rectangle at ({@code x}, {@code y}) so that
+     * no later vault overlaps it. Nothing is written to the layout.
+     */
+    void reserve(int x, int y, int w, int h) {
+        for (int row = y; row < y + h; row++) {
+            for (int column = x; column < x + w; column++) {
+                reservedCells.mask.set(column, row);
+            }
+        }
+        reservedCells.stale = true;
+    }
+
+    /**
+     * Drop every reservation.
+     */
+    void clearReservations() {
+        reservedCells.mask.clearAll();
+        reservedCells.stale = true;
+    }
+
+    /**
+     * Copy the vault's solid cells onto the layout at ({@code x}, {@code y}),
+     * visiting only the set bits of its mask.
+     */
+    void overlay(VaultTiles vault, int x, int y) {
+        char[][] tiles = vault.tiles();
+        long[][] solid = vault.solid();
+        for (int row = 0; row < solid.length; row++) {
+            char[] source = tiles[row];
+            int target = layout.index(x, y + row);
+            long[] words = solid[row];
+            for (int i = 0; i < words.length; i++) {
+                long word = words[i];
+                while (word != 0) {
+                    int column = (i << 6) + Long.numberOfTrailingZeros(word);
+                    layout.setAt(target + column, source[column]);
+                    word &= word - 1;
+                }
+            }
+        }
+    }
+
+    /**
+     * A cell mask with a lazily rebuilt summed-area table.
+     */
+    private static final class SummedMask {
+        private final CellMask mask;
+        private final int[] sums;
+        private boolean stale = true;
+
+        private SummedMask(CellMask mask) {
+            this.mask = mask;
+            this.sums = new int[(mask.width() + 1) * (mask.height() + 1)];
+        }
+
+        private int count(int x, int y, int w, int h) {
+            refresh();
+            int stride = mask.width() + 1;
+            return sums[(y + h) * stride + x + w] - sums[y * stride + x + w]
+                    - sums[(y + h) * stride + x] + sums[y * stride + x];
+        }
+
+        private void refresh() {
+            if (!stale) {
+                return;
+            }
+            int stride = mask.width() + 1;
+            for (int y = 0; y < mask.height(); y++) {
+                int rowSum = 0;
+                for (int x = 0; x < mask.width(); x++) {
+                    if (mask.get(x, y)) {
+                        rowSum++;
+                    }
+                    sums[(y + 1) * stride + x + 1] = sums[y * stride + x + 1] + rowSum;
+                }
+            }
+            stale = false;
+        }
+    }
+}
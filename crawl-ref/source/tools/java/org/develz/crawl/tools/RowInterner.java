@@ -0,0 +1,126 @@
+package org.develz.crawl.tools;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Flyweight table for MAP rows, shared by all the parsers of one library load.
+ *
+ * Rows are looked up by the UTF-8 byte slice they were read from, so a row that
+ * has been seen before costs a hash and a comparison rather than a new String.
+ * For ASCII slices the hash is computed the same way as {@link String#hashCode()},
+ * which lets slices and already-decoded rows share one table. The table is split
+ * into independently locked segments so parallel parsers rarely contend.
+ */
+final class RowInterner {
+    private static final int SEGMENTS = 16;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+
+    RowInterner() {
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment();
+        }
+    }
+
+    /**
+     * The canonical row for the UTF-8 bytes in [from, to) of {@code data}.
+     */
+    String intern(byte[] data, int from, int to) {
+        int hash = 0;
+        for (int i = from; i < to; i++) {
+            byte b = data[i];
+            if (b < 0) {
+                return intern(new String(data, from, to - from, StandardCharsets.UTF_8));
+            }
+            hash = 31 * hash + b;
+        }
+        return segmentFor(hash).intern(hash, data, from, to);
+    }
+
+    /**
+     * The canonical row equal to {@code row}.
+     */
+    String intern(String row) {
+        int hash = row.hashCode();
+        return segmentFor(hash).intern(hash, row);
+    }
+
+    private Segment segmentFor(int hash) {
+        return segments[(hash ^ (hash >>> 16)) & (SEGMENTS - 1)];
+    }
+
+    private static final class Segment {
+        private String[] rows = new String[64];
+        private int[] hashes = new int[64];
+        private int size;
+
+        synchronized String intern(int hash, byte[] data, int from, int to) {
+            int mask = rows.length - 1;
+            for (int slot = spread(hash) & mask; rows[slot] != null; slot = (slot + 1) & mask) {
+                if (hashes[slot] == hash && sameAscii(rows[slot], data, from, to)) {
+                    return rows[slot];
+                }
+            }
+            return insert(hash, new String(data, from, to - from, StandardCharsets.US_ASCII));
+        }
+
+        synchronized String intern(int hash, String row) {
+            int mask = rows.length - 1;
+            for (int slot = spread(hash) & mask; rows[slot] != null; slot = (slot + 1) & mask) {
+                if (hashes[slot] == hash && rows[slot].equals(row)) {
+                    return rows[slot];
+                }
+            }
+            return insert(hash, row);
+        }
+
+        private String insert(int hash, String row) {
+            if (2 * (size + 1) > rows.length) {
+                grow();
+            }
+            int mask = rows.length - 1;
+            int slot = spread(hash) & mask;
+            while (rows[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            rows[slot] = row;
+            hashes[slot] = hash;
+            size++;
+            return row;
+        }
+
+        private void grow() {
+            String[] oldRows = rows;
+            int[] oldHashes = hashes;
+            rows = new String[oldRows.length * 2];
+            hashes = new int[oldRows.length * 2];
+            int mask = rows.length - 1;
+            for (int i = 0; i < oldRows.length; i++) {
+                if (oldRows[i] != null) {
+                    int slot = spread(oldHashes[i]) & mask;
+                    while (rows[slot] != null) {
+                        slot = (slot + 1) & mask;
+                    }
+                    rows[slot] = oldRows[i];
+                    hashes[slot] = oldHashes[i];
+                }
+            }
+        }
+
+        private static int spread(int hash) {
+            return (hash * 0x9e3779b9) >>> 7;
+        }
+
+        private static boolean sameAscii(String row, byte[] data, int from, int to) {
+            if (row.length() != to - from) {
+                return false;
+            }
+            for (int i = 0; i < row.length(); i++) {
+                if (row.charAt(i) != data[from + i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package org.develz.crawl.tools;
+
+import java.util.Locale;
+
+/**
+ * How much MAP row storage a library saves by sharing identical rows. Byte
+ * counts are glyph counts, i.e. the size of the rows at one byte per glyph.
+ */
+public final class RowStats {
+    private final long rows;
+    private final long distinctRows;
+    private final long bytes;
+    private final long distinctBytes;
+
+    RowStats(long rows, long distinctRows, long bytes, long distinctBytes) {
+        this.rows = rows;
+        this.distinctRows = distinctRows;
+        this.bytes = bytes;
+        this.distinctBytes = distinctBytes;
+    }
+
+    /**
+     * Rows referenced by maps, counting every occurrence.
+     */
+    public long rows() {
+        return rows;
+    }
+
+    /**
+     * Rows actually stored.
+     */
+    public long distinctRows() {
+        return distinctRows;
+    }
+
+    public long bytes() {
+        return bytes;
+    }
+
+    public long distinctBytes() {
+        return distinctBytes;
+    }
+
+    public long bytesSaved() {
+        return bytes - distinctBytes;
+    }
+
+    /**
+     * Logical over stored row bytes; 1.0 means nothing is shared.
+     */
+    public double dedupRatio() {
+        return distinctBytes == 0 ? 1.0 : (double) bytes / distinctBytes;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "%d rows (%d distinct), %d bytes, %d saved, dedup ratio %.2f",
+                rows, distinctRows, bytes, bytesSaved(), dedupRatio());
+    }
+}
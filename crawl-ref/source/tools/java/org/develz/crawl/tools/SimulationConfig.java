@@ -15,6 +15,10 @@ public final class SimulationConfig {
     private final Optional<String> mapName;
     private final int width;
     private final int height;
+    private final Optional<Path> vaultCache;
+    private final VaultLibrary.StorageMode vaultStorage;
+    private final int layoutRetries;
+    private final int attemptWindow;
 
     private SimulationConfig(Builder builder) {
         this.depth = builder.depth;
@@ -24,6 +28,10 @@ public final class SimulationConfig {
         this.mapName = builder.mapName.map(String::trim).filter(s -> !s.isEmpty());
         this.width = builder.width;
         this.height = builder.height;
+        this.vaultCache = builder.vaultCache;
+        this.vaultStorage = builder.vaultStorage;
+        this.layoutRetries = builder.layoutRetries;
+        this.attemptWindow = builder.attemptWindow;
     }
 
     public int depth() {
@@ -54,6 +62,38 @@ public final class SimulationConfig {
         return height;
     }
 
+    /**
+     * Location of the on-disk parsed vault cache, if caching is enabled. Lazy
+     * storage keeps its cache next to it, with {@code .lazy} appended.
+     */
+    public Optional<Path> vaultCache() {
+        return vaultCache;
+    }
+
+    /**
+     * How the vault library keeps MAP bodies in memory.
+     */
+    public VaultLibrary.StorageMode vaultStorage() {
+        return vaultStorage;
+    }
+
+    /**
+     * How many vault-placement vetoes one base layout may take before it is
+     * regenerated; 0 regenerates it after every veto.
+     */
+    public int layoutRetries() {
+        return layoutRetries;
+    }
+
+    /**
+     * How many build attempts run speculatively at once, each from its own random
+     * stream; 0 runs them one after another from a single stream. The result
+     * depends on this window but not on how many threads carry it out.
+     */
+    public int attemptWindow() {
+        return attemptWindow;
+    }
+
     public static Builder builder() {
         return new Builder();
     }
@@ -66,6 +106,10 @@ public final class SimulationConfig {
         private Optional<String> mapName = Optional.empty();
         private int width = 100;
         private int height = 100;
+        private Optional<Path> vaultCache = Optional.empty();
+        private VaultLibrary.StorageMode vaultStorage = VaultLibrary.StorageMode.EAGER;
+        private int layoutRetries = 4;
+        private int attemptWindow = 0;
 
         private Builder() {
         }
@@ -105,10 +149,31 @@ public final class SimulationConfig {
             return this;
         }
 
+        public Builder vaultCache(Path vaultCache) {
+            this.vaultCache = Optional.ofNullable(vaultCache);
+            return this;
+        }
+
+        public Builder vaultStorage(VaultLibrary.StorageMode vaultStorage) {
+            this.vaultStorage = Objects.requireNonNull(vaultStorage, "vaultStorage");
+            return this;
+        }
+
+        public Builder layoutRetries(int layoutRetries) {
+            this.layoutRetries = Math.max(0, layoutRetries);
+            return this;
+        }
+
+        public Builder attemptWindow(int attemptWindow) {
+            this.attemptWindow = Math.max(0, attemptWindow);
+            return this;
+        }
+
         public SimulationConfig build() {
             Objects.requireNonNull(sourceRoot, "sourceRoot must be set");
             Objects.requireNonNull(branch, "branch Optional must not be null");
             Objects.requireNonNull(mapName, "mapName Optional must not be null");
+            Objects.requireNonNull(vaultCache, "vaultCache Optional must not be null");
             return new SimulationConfig(this);
         }
     }
@@ -0,0 +1,104 @@
+package org.develz.crawl.tools;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Bucketed index over vault footprints answering "every map with
+ * width &lt;= W and height &lt;= H".
+ *
+ * Maps are grouped into one column per distinct width, and each column is sorted
+ * by height. A query binary-searches the last column that fits and, within each
+ * fitting column, the last height that fits, so its cost is proportional to the
+ * number of distinct widths plus the size of the answer rather than to the size
+ * of the library.
+ *
+ * Maps with an empty MAP body (Lua-built layouts, special rooms and the like)
+ * are not indexed: they have no tiles to place.
+ */
+final class SizeIndex {
+    private final int mapCount;
+    private final int[] columnWidths;
+    private final int[][] columnHeights;
+    private final int[][] columnIds;
+
+    SizeIndex(List<MapDefinition> maps) {
+        this.mapCount = maps.size();
+        List<Integer> ids = new ArrayList<>();
+        for (int id = 0; id < maps.size(); id++) {
+            MapDefinition map = maps.get(id);
+            if (map.width() > 0 && map.height() > 0) {
+                ids.add(id);
+            }
+        }
+        ids.sort(Comparator.<Integer>comparingInt(id -> maps.get(id).width())
+                .thenComparingInt(id -> maps.get(id).height())
+                .thenComparingInt(id -> id));
+
+        int columns = 0;
+        for (int i = 0; i < ids.size(); i++) {
+            if (i == 0 || maps.get(ids.get(i)).width() != maps.get(ids.get(i - 1)).width()) {
+                columns++;
+            }
+        }
+        this.columnWidths = new int[columns];
+        this.columnHeights = new int[columns][];
+        this.columnIds = new int[columns][];
+
+        int column = 0;
+        int start = 0;
+        for (int i = 1; i <= ids.size(); i++) {
+            if (i < ids.size() && maps.get(ids.get(i)).width() == maps.get(ids.get(start)).width()) {
+                continue;
+            }
+            int length = i - start;
+            columnWidths[column] = maps.get(ids.get(start)).width();
+            columnHeights[column] = new int[length];
+            columnIds[column] = new int[length];
+            for (int j = 0; j < length; j++) {
+                int id = ids.get(start + j);
+                columnHeights[column][j] = maps.get(id).height();
+                columnIds[column][j] = id;
+            }
+            column++;
+            start = i;
+        }
+    }
+
+    /**
+     * Ids of the non-empty maps no wider than {@code maxWidth} and no taller than
+     * {@code maxHeight}.
+     */
+    BitSet fitting(int maxWidth, int maxHeight) {
+        BitSet result = new BitSet(mapCount);
+        int columns = upperBound(columnWidths, columnWidths.length, maxWidth);
+        for (int column = 0; column < columns; column++) {
+            int[] heights = columnHeights[column];
+            int[] ids = columnIds[column];
+            int fit = upperBound(heights, heights.length, maxHeight);
+            for (int i = 0; i < fit; i++) {
+                result.set(ids[i]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Number of leading entries of the ascending {@code values[0..length)} that are &lt;= {@code key}.
+     */
+    private static int upperBound(int[] values, int length, int key) {
+        int low = 0;
+        int high = length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (values[mid] <= key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
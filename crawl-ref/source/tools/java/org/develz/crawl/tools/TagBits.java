@@ -0,0 +1,142 @@
+package org.develz.crawl.tools;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Process-wide interning of TAGS: values to bit positions, so that a map's tags
+ * can be held as a {@code long[]} bitset and compared word by word.
+ *
+ * Positions are handed out in first-seen order and are only meaningful within
+ * this JVM; anything persisted (the library cache) stores tag names instead.
+ * The set of distinct tags in a Crawl tree is small (a few hundred), so the
+ * table never needs to shrink.
+ */
+final class TagBits {
+    static final long[] EMPTY = new long[0];
+
+    private static final Map<String, Integer> BITS = new ConcurrentHashMap<>();
+    private static final List<String> NAMES = new ArrayList<>();
+
+    private TagBits() {
+    }
+
+    /**
+     * Bit position of {@code tag}, assigning the next free one if it is new.
+     */
+    static int intern(String tag) {
+        Integer bit = BITS.get(tag);
+        if (bit != null) {
+            return bit;
+        }
+        synchronized (NAMES) {
+            return BITS.computeIfAbsent(tag, key -> {
+                NAMES.add(key);
+                return NAMES.size() - 1;
+            });
+        }
+    }
+
+    /**
+     * Bit position of {@code tag}, or -1 if no map has been seen with it.
+     */
+    static int bitOf(String tag) {
+        return BITS.getOrDefault(tag, -1);
+    }
+
+    static String name(int bit) {
+        synchronized (NAMES) {
+            return NAMES.get(bit);
+        }
+    }
+
+    static long[] of(Collection<String> tags) {
+        if (tags.isEmpty()) {
+            return EMPTY;
+        }
+        long[] words = EMPTY;
+        for (String tag : tags) {
+            int bit = intern(tag);
+            if ((bit >>> 6) >= words.length) {
+                long[] grown = new long[(bit >>> 6) + 1];
+                System.arraycopy(words, 0, grown, 0, words.length);
+                words = grown;
+            }
+            words[bit >>> 6] |= 1L << bit;
+        }
+        return words;
+    }
+
+    static boolean contains(long[] words, int bit) {
+        return bit >= 0 && (bit >>> 6) < words.length && (words[bit >>> 6] & (1L << bit)) != 0;
+    }
+
+    /**
+     * Whether every tag set in {@code required} is also set in {@code words}.
+     */
+    static boolean containsAll(long[] words, long[] required) {
+        for (int i = 0; i < required.length; i++) {
+            long word = i < words.length ? words[i] : 0;
+            if ((required[i] & ~word) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Whether {@code words} and {@code other} share any tag.
+     */
+    static boolean intersects(long[] words, long[] other) {
+        int shared = Math.min(words.length, other.length);
+        for (int i = 0; i < shared; i++) {
+            if ((words[i] & other[i]) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The tags of {@code words} or {@code other}, as a new bitset.
+     */
+    static long[] or(long[] words, long[] other) {
+        long[] longer = words.length >= other.length ? words : other;
+        long[] shorter = longer == words ? other : words;
+        long[] union = longer.clone();
+        for (int i = 0; i < shorter.length; i++) {
+            union[i] |= shorter[i];
+        }
+        return union;
+    }
+
+    /**
+     * The tags of {@code words} that are not in {@code other}, as a new bitset.
+     */
+    static long[] andNot(long[] words, long[] other) {
+        long[] difference = words.clone();
+        int shared = Math.min(words.length, other.length);
+        for (int i = 0; i < shared; i++) {
+            difference[i] &= ~other[i];
+        }
+        return difference;
+    }
+
+    /**
+     * Names of the tags set in {@code words}, in bit order.
+     */
+    static List<String> names(long[] words) {
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < words.length; i++) {
+            long word = words[i];
+            while (word != 0) {
+                names.add(name((i << 6) + Long.numberOfTrailingZeros(word)));
+                word &= word - 1;
+            }
+        }
+        return names;
+    }
+}
@@ -0,0 +1,155 @@
+package org.develz.crawl.tools;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One contiguous byte array holding every distinct MAP row of a library, one
+ * byte per glyph, plus a row table through which each map addresses its body.
+ *
+ * A row that occurs in several maps (or several times in one map) is stored
+ * once. A map is identified by the position of its first entry in the row
+ * table; its width and height come from the map itself, and tiles past the end
+ * of a short row read as ' '.
+ *
+ * ASCII glyphs are stored as themselves. The handful of other characters that
+ * appear in MAP bodies are given codes from 0x80 up, resolved through a small
+ * side table.
+ */
+final class VaultArena {
+    private static final int FIRST_EXTENDED = 0x80;
+    private static final int MAX_EXTENDED = 0x80;
+
+    private final byte[] data;
+    private final int[] rowStarts;
+    private final int[] mapRows;
+    private final char[] extended;
+    private final List<MapDefinition> maps;
+
+    private VaultArena(byte[] data, int[] rowStarts, int[] mapRows, char[] extended,
+                       List<MapDefinition> headers, int[] firstRows) {
+        this.data = data;
+        this.rowStarts = rowStarts;
+        this.mapRows = mapRows;
+        this.extended = extended;
+        List<MapDefinition> packed = new ArrayList<>(headers.size());
+        for (int i = 0; i < headers.size(); i++) {
+            packed.add(new MapDefinition(headers.get(i), this, firstRows[i]));
+        }
+        this.maps = packed;
+    }
+
+    /**
+     * Copy the bodies of {@code maps} into a new arena. The arena's
+     * {@link #maps()} are equivalent maps backed by it, in the same order; the
+     * input maps' rows are no longer referenced by them.
+     */
+    static VaultArena pack(List<MapDefinition> maps) {
+        int totalRows = 0;
+        for (MapDefinition map : maps) {
+            totalRows += map.height();
+        }
+        int[] mapRows = new int[totalRows];
+        Map<String, Integer> rowIds = new HashMap<>();
+        List<String> distinct = new ArrayList<>();
+        long distinctLength = 0;
+        int[] firstRows = new int[maps.size()];
+        int nextRow = 0;
+        for (int i = 0; i < maps.size(); i++) {
+            MapDefinition map = maps.get(i);
+            firstRows[i] = nextRow;
+            for (String row : map.rows()) {
+                Integer id = rowIds.get(row);
+                if (id == null) {
+                    id = distinct.size();
+                    rowIds.put(row, id);
+                    distinct.add(row);
+                    distinctLength += row.length();
+                }
+                mapRows[nextRow++] = id;
+            }
+        }
+        if (distinctLength > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Vault rows do not fit in a single arena (" + distinctLength + " tiles)");
+        }
+
+        byte[] data = new byte[(int) distinctLength];
+        int[] rowStarts = new int[distinct.size() + 1];
+        Map<Character, Integer> codes = new HashMap<>();
+        StringBuilder extended = new StringBuilder();
+        int next = 0;
+        for (int id = 0; id < distinct.size(); id++) {
+            String row = distinct.get(id);
+            rowStarts[id] = next;
+            for (int x = 0; x < row.length(); x++) {
+                char c = row.charAt(x);
+                if (c < FIRST_EXTENDED) {
+                    data[next++] = (byte) c;
+                    continue;
+                }
+                Integer code = codes.get(c);
+                if (code == null) {
+                    if (extended.length() == MAX_EXTENDED) {
+                        throw new IllegalStateException("More than " + MAX_EXTENDED
+                                + " distinct non-ASCII glyphs in vault bodies");
+                    }
+                    code = FIRST_EXTENDED + extended.length();
+                    codes.put(c, code);
+                    extended.append(c);
+                }
+                data[next++] = (byte) (int) code;
+            }
+        }
+        rowStarts[distinct.size()] = next;
+
+        return new VaultArena(data, rowStarts, mapRows, extended.toString().toCharArray(), maps, firstRows);
+    }
+
+    List<MapDefinition> maps() {
+        return maps;
+    }
+
+    /**
+     * Glyph at ({@code x}, {@code y}) of the map whose rows start at {@code firstRow}.
+     */
+    char tileAt(int firstRow, int x, int y) {
+        int row = mapRows[firstRow + y];
+        int start = rowStarts[row];
+        return x < rowStarts[row + 1] - start ? glyph(start + x) : ' ';
+    }
+
+    /**
+     * Decode the {@code height} rows of the map whose rows start at {@code firstRow}.
+     */
+    List<String> rows(int firstRow, int height) {
+        List<String> rows = new ArrayList<>(height);
+        for (int y = 0; y < height; y++) {
+            int row = mapRows[firstRow + y];
+            int start = rowStarts[row];
+            char[] glyphs = new char[rowStarts[row + 1] - start];
+            for (int x = 0; x < glyphs.length; x++) {
+                glyphs[x] = glyph(start + x);
+            }
+            rows.add(new String(glyphs));
+        }
+        return rows;
+    }
+
+    /**
+     * Sharing achieved by the row table.
+     */
+    RowStats stats() {
+        long bytes = 0;
+        for (int row : mapRows) {
+            bytes += rowStarts[row + 1] - rowStarts[row];
+        }
+        return new RowStats(mapRows.length, rowStarts.length - 1, bytes, data.length);
+    }
+
+    private char glyph(int index) {
+        int b = data[index] & 0xff;
+        return b < FIRST_EXTENDED ? (char) b : extended[b - FIRST_EXTENDED];
+    }
+}
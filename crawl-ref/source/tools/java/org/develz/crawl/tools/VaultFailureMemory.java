@@ -0,0 +1,109 @@
+package org.develz.crawl.tools;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Which vaults have been vetoed on which kind of level, so later attempts stop
+ * drawing them there.
+ *
+ * Failures are kept per layout style and level size, by
+ * {@link MapDefinition#qualifiedName()} (source file and map name) so that the
+ * memory stays valid across libraries loaded from the same source tree while
+ * maps that share a name in different files are kept apart. A vault
+ * that did not fit an untouched layout on its own is excluded at once; one that
+ * was part of a draw that could not be packed is excluded after
+ * {@link #PACKING_FAILURES} such draws.
+ *
+ * Each simulation uses a private memory unless one is handed to
+ * {@link DungeonMapSimulator#DungeonMapSimulator(VaultLibrary.Holder, VaultFailureMemory)},
+ * in which case it is shared by every run of that simulator; results then depend
+ * on which runs came before. Thread-safe.
+ */
+public final class VaultFailureMemory {
+    static final int PACKING_FAILURES = 3;
+
+    private final Map<LevelKey, Level> levels = new ConcurrentHashMap<>();
+
+    public VaultFailureMemory() {
+    }
+
+    /**
+     * Number of (vault, layout style, level size) combinations currently excluded.
+     */
+    public int excludedCount() {
+        int count = 0;
+        for (Level level : levels.values()) {
+            count += level.excluded.size();
+        }
+        return count;
+    }
+
+    /**
+     * Note that {@code vault}, a qualified map name, was vetoed on a {@code width} x {@code height} level
+     * of layout {@code style}; {@code alone} when it did not fit even with no other
+     * vault planned.
+     */
+    void recordFailure(String vault, String style, int width, int height, boolean alone) {
+        levels.computeIfAbsent(new LevelKey(style, width, height), key -> new Level())
+                .record(vault, alone);
+    }
+
+    /**
+     * Qualified names of the vaults excluded on such levels. The same set instance is
+     * returned until the exclusions change, so callers may cache by identity.
+     */
+    Set<String> excluded(String style, int width, int height) {
+        Level level = levels.get(new LevelKey(style, width, height));
+        return level != null ? level.excluded : Collections.emptySet();
+    }
+
+    private static final class Level {
+        private final Map<String, Integer> failures = new HashMap<>();
+        private volatile Set<String> excluded = Collections.emptySet();
+
+        private synchronized void record(String vault, boolean alone) {
+            if (excluded.contains(vault)) {
+                return;
+            }
+            int count = failures.merge(vault, 1, Integer::sum);
+            if (alone || count >= PACKING_FAILURES) {
+                Set<String> next = new HashSet<>(excluded);
+                next.add(vault);
+                excluded = Collections.unmodifiableSet(next);
+                failures.remove(vault);
+            }
+        }
+    }
+
+    private static final class LevelKey {
+        private final String style;
+        private final int width;
+        private final int height;
+
+        private LevelKey(String style, int width, int height) {
+            this.style = style;
+            this.width = width;
+            this.height = height;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof LevelKey)) {
+                return false;
+            }
+            LevelKey key = (LevelKey) other;
+            return width == key.width && height == key.height && style.equals(key.style);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(style, width, height);
+        }
+    }
+}
@@ -0,0 +1,430 @@
+package org.develz.crawl.tools;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Immutable, parsed view of the vault definitions (dat/des) and dlua scripts
+ * (dat/dlua) of a Crawl source tree.
+ *
+ * A library is safe to share between any number of {@link DungeonMapSimulator}
+ * instances and threads. Its maps never change after {@link #load} returns. The
+ * branch and depth indexes memoise lookups in concurrent maps, and candidate
+ * pools are kept in a bounded least-recently-used {@link VaultPoolCache}: a
+ * synchronised map whose entries are evicted once it holds
+ * {@value #POOL_CACHE_SIZE} queries. An evicted pool is rebuilt on its next
+ * use, and threads racing on a missing pool may each build it. The copies are
+ * equal, but callers must not count on getting the same instance twice.
+ */
+public final class VaultLibrary {
+    /**
+     * How MAP bodies are held in memory.
+     */
+    public enum StorageMode {
+        /** Every map keeps its rows from parse time. */
+        EAGER,
+        /** Only headers are resident; rows are decoded from a memory-mapped view on first use. */
+        LAZY,
+        /** Distinct rows are packed into one shared byte arena, one byte per glyph. */
+        ARENA
+    }
+
+    private static final int POOL_CACHE_SIZE = 256;
+
+    private final Path sourceRoot;
+    private final StorageMode storage;
+    private final List<MapDefinition> maps;
+    private final List<Path> dlua;
+    private final BranchIndex branchIndex;
+    private final SizeIndex sizeIndex;
+    private final DepthIndex depthIndex;
+    private final VaultPoolCache pools = new VaultPoolCache(POOL_CACHE_SIZE);
+    private final VaultArena arena;
+
+    private VaultLibrary(Path sourceRoot, StorageMode storage, List<MapDefinition> maps, List<Path> dlua,
+                         VaultArena arena) {
+        this.sourceRoot = sourceRoot;
+        this.storage = storage;
+        this.maps = Collections.unmodifiableList(maps);
+        this.dlua = Collections.unmodifiableList(dlua);
+        this.branchIndex = new BranchIndex(this.maps);
+        this.sizeIndex = new SizeIndex(this.maps);
+        this.depthIndex = new DepthIndex(this.maps);
+        this.arena = arena;
+    }
+
+    /**
+     * Parse the library found under {@code sourceRoot} without an on-disk cache.
+     */
+    public static VaultLibrary load(Path sourceRoot) throws IOException {
+        return load(sourceRoot, Optional.empty());
+    }
+
+    /**
+     * Parse the library found under {@code sourceRoot}, reusing {@code cacheFile}
+     * for .des files that have not changed since it was written.
+     */
+    public static VaultLibrary load(Path sourceRoot, Optional<Path> cacheFile) throws IOException {
+        return load(sourceRoot, cacheFile, StorageMode.EAGER);
+    }
+
+    /**
+     * Parse the library found under {@code sourceRoot} using the given storage mode.
+     */
+    public static VaultLibrary load(Path sourceRoot, Optional<Path> cacheFile,
+                                    StorageMode storage) throws IOException {
+        Objects.requireNonNull(sourceRoot, "sourceRoot");
+        Objects.requireNonNull(cacheFile, "cacheFile Optional must not be null");
+        Objects.requireNonNull(storage, "storage");
+        List<MapDefinition> maps = loadMaps(sourceRoot, cacheFile, storage);
+        VaultArena arena = null;
+        if (storage == StorageMode.ARENA) {
+            arena = VaultArena.pack(maps);
+            maps = arena.maps();
+        }
+        return new VaultLibrary(sourceRoot, storage, maps, loadDlua(sourceRoot), arena);
+    }
+
+    /**
+     * Create a holder that parses the library on first use and then keeps it.
+     */
+    public static Holder lazy(Path sourceRoot, Optional<Path> cacheFile) {
+        return lazy(sourceRoot, cacheFile, StorageMode.EAGER);
+    }
+
+    /**
+     * Create a holder that parses the library on first use, with the given storage mode.
+     */
+    public static Holder lazy(Path sourceRoot, Optional<Path> cacheFile, StorageMode storage) {
+        Objects.requireNonNull(sourceRoot, "sourceRoot");
+        Objects.requireNonNull(cacheFile, "cacheFile Optional must not be null");
+        Objects.requireNonNull(storage, "storage");
+        return new Holder(sourceRoot, cacheFile, storage, null);
+    }
+
+    public Path sourceRoot() {
+        return sourceRoot;
+    }
+
+    public StorageMode storage() {
+        return storage;
+    }
+
+    /**
+     * Number of MAP/ENDMAP blocks in the library.
+     */
+    public int size() {
+        return maps.size();
+    }
+
+    public List<Path> dluaScripts() {
+        return dlua;
+    }
+
+    List<MapDefinition> maps() {
+        return maps;
+    }
+
+    /**
+     * How much row storage is shared between maps. For lazy libraries only rows
+     * that have been loaded so far are counted.
+     */
+    public RowStats rowStats() {
+        if (arena != null) {
+            return arena.stats();
+        }
+        Set<String> distinct = Collections.newSetFromMap(new IdentityHashMap<>());
+        long rows = 0;
+        long bytes = 0;
+        long distinctBytes = 0;
+        for (MapDefinition map : maps) {
+            if (!map.rowsLoaded()) {
+                continue;
+            }
+            for (String row : map.rows()) {
+                rows++;
+                bytes += row.length();
+                if (distinct.add(row)) {
+                    distinctBytes += row.length();
+                }
+            }
+        }
+        return new RowStats(rows, distinct.size(), bytes, distinctBytes);
+    }
+
+    /**
+     * Ids (positions in {@link #maps()}) of the maps placeable in {@code branchCode},
+     * as a bitset. Shared; do not modify.
+     */
+    BitSet branchSet(String branchCode) {
+        return branchIndex.setFor(branchCode);
+    }
+
+    /**
+     * Ids of the non-empty maps that fit within {@code maxWidth} x {@code maxHeight}.
+     */
+    BitSet mapsFitting(int maxWidth, int maxHeight) {
+        return sizeIndex.fitting(maxWidth, maxHeight);
+    }
+
+    /**
+     * Ids of the maps whose DEPTH: allows them on level {@code depth} of
+     * {@code branch} (upper-cased), clamped to the levels the branch has.
+     */
+    BitSet mapsAtDepth(String branch, int depth) {
+        return depthIndex.eligible(branch, depth);
+    }
+
+    /**
+     * Start a tag/branch/size/depth query over this library's maps.
+     */
+    VaultQuery query() {
+        return new VaultQuery(this);
+    }
+
+    /**
+     * Candidate vaults for a branch (null for any) and level that fit the given
+     * level size, directly or, unless tagged no_rotate, turned. Without random
+     * vaults only maps that are not chosen by depth remain, mirroring Crawl's
+     * fallback after repeated vetoes. Depth, weight and chance are judged against
+     * {@code branchCode}, or the Dungeon when it is null.
+     * Each distinct query is filtered and turned into an alias table once, then
+     * kept in a bounded least-recently-used cache owned by this library, so a
+     * reloaded library never sees pools of the one it replaces.
+     */
+    VaultPool candidates(String branchCode, int depth, int maxWidth, int maxHeight,
+                         boolean allowRandomVaults) {
+        String levelBranch = branchCode != null ? branchCode : DepthRanges.DEFAULT_BRANCH;
+        PoolKey key = new PoolKey(branchCode, DepthIndex.level(levelBranch, depth), maxWidth, maxHeight,
+                allowRandomVaults);
+        return pools.get(key, () -> filterCandidates(key, levelBranch));
+    }
+
+    private VaultPool filterCandidates(PoolKey key, String levelBranch) {
+        BitSet eligible = (BitSet) mapsFitting(key.maxWidth, key.maxHeight).clone();
+        if (key.maxWidth != key.maxHeight) {
+            // Maps that only fit a quarter turn away count if they may be rotated.
+            BitSet turned = (BitSet) mapsFitting(key.maxHeight, key.maxWidth).clone();
+            turned.andNot(eligible);
+            for (int id = turned.nextSetBit(0); id >= 0; id = turned.nextSetBit(id + 1)) {
+                if (maps.get(id).rotatable()) {
+                    eligible.set(id);
+                }
+            }
+        }
+        eligible.and(mapsAtDepth(levelBranch, key.depth));
+        if (key.branchCode != null) {
+            eligible.and(branchSet(key.branchCode));
+        }
+        List<MapDefinition> filtered = new ArrayList<>();
+        for (int id = eligible.nextSetBit(0); id >= 0; id = eligible.nextSetBit(id + 1)) {
+            MapDefinition map = maps.get(id);
+            if (allowedInPool(map, key.allowRandomVaults)) {
+                filtered.add(map);
+            }
+        }
+        if (filtered.isEmpty()) {
+            return VaultPool.EMPTY;
+        }
+        int[] weights = new int[filtered.size()];
+        int[] chances = new int[filtered.size()];
+        for (int i = 0; i < filtered.size(); i++) {
+            MapDirectives directives = filtered.get(i).directives();
+            weights[i] = directives.weightAt(levelBranch, key.depth);
+            int chance = directives.chanceAt(levelBranch, key.depth);
+            chances[i] = chance > 0 ? chance : -1;
+        }
+        return new VaultPool(filtered, weights, chances);
+    }
+
+    private static boolean allowedInPool(MapDefinition map, boolean allowRandomVaults) {
+        return allowRandomVaults || !map.directives().hasDepths();
+    }
+
+    private static final class PoolKey {
+        private final String branchCode;
+        private final int depth;
+        private final int maxWidth;
+        private final int maxHeight;
+        private final boolean allowRandomVaults;
+
+        private PoolKey(String branchCode, int depth, int maxWidth, int maxHeight, boolean allowRandomVaults) {
+            this.branchCode = branchCode;
+            this.depth = depth;
+            this.maxWidth = maxWidth;
+            this.maxHeight = maxHeight;
+            this.allowRandomVaults = allowRandomVaults;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof PoolKey)) {
+                return false;
+            }
+            PoolKey key = (PoolKey) other;
+            return depth == key.depth && maxWidth == key.maxWidth && maxHeight == key.maxHeight
+                    && allowRandomVaults == key.allowRandomVaults
+                    && Objects.equals(branchCode, key.branchCode);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(branchCode, depth, maxWidth, maxHeight, allowRandomVaults);
+        }
+    }
+
+    /**
+     * Thread-safe lazy holder for a {@link VaultLibrary}. The first call to
+     * {@link #get()} parses the library; later calls return the same instance.
+     */
+    public static final class Holder {
+        private final Path sourceRoot;
+        private final Optional<Path> cacheFile;
+        private final StorageMode storage;
+        private volatile VaultLibrary library;
+
+        private Holder(Path sourceRoot, Optional<Path> cacheFile, StorageMode storage, VaultLibrary library) {
+            this.sourceRoot = sourceRoot;
+            this.cacheFile = cacheFile;
+            this.storage = storage;
+            this.library = library;
+        }
+
+        static Holder of(VaultLibrary library) {
+            return new Holder(library.sourceRoot(), Optional.empty(), library.storage(), library);
+        }
+
+        public VaultLibrary get() throws IOException {
+            VaultLibrary loaded = library;
+            if (loaded == null) {
+                synchronized (this) {
+                    loaded = library;
+                    if (loaded == null) {
+                        loaded = load(sourceRoot, cacheFile, storage);
+                        library = loaded;
+                    }
+                }
+            }
+            return loaded;
+        }
+    }
+
+    private static List<MapDefinition> loadMaps(Path sourceRoot, Optional<Path> cacheFile,
+                                                StorageMode storage) throws IOException {
+        boolean lazy = storage == StorageMode.LAZY;
+        Path desRoot = sourceRoot.resolve("dat/des");
+        if (!Files.isDirectory(desRoot)) {
+            return new ArrayList<>();
+        }
+
+        // Sort so the library order (and therefore every seeded selection) does not
+        // depend on the order in which the file system happens to list entries.
+        List<Path> desFiles;
+        try (Stream<Path> walk = Files.walk(desRoot)) {
+            desFiles = walk.filter(path -> path.toString().endsWith(".des"))
+                    .sorted(Comparator.comparing(path -> VaultLibraryCache.relativeName(desRoot, path)))
+                    .collect(Collectors.toList());
+        }
+
+        RowInterner rowInterner = new RowInterner();
+        if (cacheFile.isPresent()) {
+            return VaultLibraryCache.load(cacheFile.get(), desRoot, desFiles, lazy, rowInterner,
+                    files -> parseDesFiles(desRoot, files, lazy, rowInterner));
+        }
+
+        List<MapDefinition> maps = new ArrayList<>();
+        for (List<MapDefinition> parsed : parseDesFiles(desRoot, desFiles, lazy, rowInterner)) {
+            maps.addAll(parsed);
+        }
+        return maps;
+    }
+
+    /**
+     * Parse {@code desFiles} on the common fork-join pool, one leaf task per file.
+     * The result holds one list per input file, in input order; identical rows are
+     * shared through {@code rowInterner}.
+     */
+    static List<List<MapDefinition>> parseDesFiles(Path desRoot, List<Path> desFiles, boolean lazy,
+                                                   RowInterner rowInterner) throws IOException {
+        if (desFiles.isEmpty()) {
+            return new ArrayList<>();
+        }
+        try {
+            return ForkJoinPool.commonPool().invoke(new ParseTask(desRoot, desFiles, lazy,
+                    rowInterner, 0, desFiles.size()));
+        } catch (UncheckedIOException failure) {
+            throw failure.getCause();
+        }
+    }
+
+    private static final class ParseTask extends RecursiveTask<List<List<MapDefinition>>> {
+        private static final long serialVersionUID = 1L;
+
+        private final Path desRoot;
+        private final List<Path> desFiles;
+        private final boolean lazy;
+        private final RowInterner rowInterner;
+        private final int from;
+        private final int to;
+
+        private ParseTask(Path desRoot, List<Path> desFiles, boolean lazy, RowInterner rowInterner,
+                          int from, int to) {
+            this.desRoot = desRoot;
+            this.desFiles = desFiles;
+            this.lazy = lazy;
+            this.rowInterner = rowInterner;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected List<List<MapDefinition>> compute() {
+            if (to - from == 1) {
+                List<List<MapDefinition>> single = new ArrayList<>(1);
+                try {
+                    single.add(DesParser.parse(desRoot, desFiles.get(from), lazy, rowInterner));
+                } catch (IOException failure) {
+                    throw new UncheckedIOException(failure);
+                }
+                return single;
+            }
+            int mid = (from + to) >>> 1;
+            ParseTask left = new ParseTask(desRoot, desFiles, lazy, rowInterner, from, mid);
+            left.fork();
+            List<List<MapDefinition>> right = new ParseTask(desRoot, desFiles, lazy, rowInterner, mid, to)
+                    .compute();
+            List<List<MapDefinition>> merged = left.join();
+            merged.addAll(right);
+            return merged;
+        }
+    }
+
+    private static List<Path> loadDlua(Path sourceRoot) throws IOException {
+        List<Path> dlua = new ArrayList<>();
+        Path dluaRoot = sourceRoot.resolve("dat/dlua");
+        if (!Files.isDirectory(dluaRoot)) {
+            return dlua;
+        }
+        try (Stream<Path> walk = Files.walk(dluaRoot)) {
+            walk.filter(path -> path.toString().endsWith(".lua") || path.toString().endsWith(".dlua"))
+                    .sorted()
+                    .forEach(dlua::add);
+        }
+        return dlua;
+    }
+}
@@ -0,0 +1,307 @@
+package org.develz.crawl.tools;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32C;
+
+/**
+ * Binary on-disk cache of parsed .des files.
+ *
+ * Each entry is keyed by the file's path relative to dat/des together with its
+ * size, modification time and a CRC32C of its contents. A file whose size and
+ * mtime are unchanged is trusted as-is; otherwise its contents are hashed and it
+ * is only re-parsed when the hash differs. A missing, stale or corrupt cache file
+ * simply results in a full re-parse, after which the cache is rewritten.
+ *
+ * Distinct MAP rows are stored once, in a length-prefixed row table ahead of the
+ * file entries. Every map records its selection directives, its dimensions and
+ * the byte range of its body in the source file, followed by a length-prefixed
+ * block of indexes into the row table, so rows shared on disk are shared again
+ * once loaded. Lazy libraries skip the row table and blocks and write the blocks
+ * as absent, so they keep their cache in a file of their own (see
+ * {@link #fileFor}); otherwise each lazy load would drop the rows an eager load
+ * needs, and each eager load would then parse everything again. An eager load
+ * still treats a file whose rows are absent as stale.
+ */
+final class VaultLibraryCache {
+    private static final int MAGIC = 0x43564c43; // "CVLC"
+    private static final int VERSION = 4;
+    private static final int ROWS_ABSENT = -1;
+
+    /**
+     * Parser callback used for files that are missing from, or stale in, the cache.
+     * Returns one list of maps per input file, in input order.
+     */
+    interface Parser {
+        List<List<MapDefinition>> parse(List<Path> desFiles) throws IOException;
+    }
+
+    private static final class Entry {
+        private final long size;
+        private final long modified;
+        private final long hash;
+        private final List<MapDefinition> maps;
+
+        private Entry(long size, long modified, long hash, List<MapDefinition> maps) {
+            this.size = size;
+            this.modified = modified;
+            this.hash = hash;
+            this.maps = maps;
+        }
+    }
+
+    private VaultLibraryCache() {
+    }
+
+    /**
+     * Load the maps for {@code desFiles}, reusing cached parses where possible and
+     * rewriting {@code cacheFile} if anything changed.
+     */
+    static List<MapDefinition> load(Path cacheFile, Path desRoot, List<Path> desFiles,
+                                    boolean lazy, RowInterner rowInterner, Parser parser) throws IOException {
+        cacheFile = fileFor(cacheFile, lazy);
+        Map<String, Entry> cached = read(cacheFile, desRoot, lazy, rowInterner);
+        Map<String, Entry> current = new LinkedHashMap<>();
+        List<Path> stale = new ArrayList<>();
+        List<Entry> staleEntries = new ArrayList<>();
+        boolean dirty = cached.size() != desFiles.size();
+
+        for (Path desFile : desFiles) {
+            String relative = relativeName(desRoot, desFile);
+            BasicFileAttributes attrs = Files.readAttributes(desFile, BasicFileAttributes.class);
+            long size = attrs.size();
+            long modified = attrs.lastModifiedTime().toMillis();
+            Entry entry = cached.get(relative);
+            if (entry != null && entry.size == size && entry.modified == modified) {
+                current.put(relative, entry);
+                continue;
+            }
+
+            long hash = hash(desFile);
+            if (entry != null && entry.size == size && entry.hash == hash) {
+                current.put(relative, new Entry(size, modified, hash, entry.maps));
+            } else {
+                // Reserve the slot so the library keeps file order; filled in below.
+                Entry placeholder = new Entry(size, modified, hash, new ArrayList<>());
+                current.put(relative, placeholder);
+                stale.add(desFile);
+                staleEntries.add(placeholder);
+            }
+            dirty = true;
+        }
+
+        List<List<MapDefinition>> parsed = parser.parse(stale);
+        for (int i = 0; i < stale.size(); i++) {
+            staleEntries.get(i).maps.addAll(parsed.get(i));
+        }
+
+        if (dirty) {
+            write(cacheFile, desRoot, current);
+        }
+
+        List<MapDefinition> maps = new ArrayList<>();
+        for (Entry entry : current.values()) {
+            maps.addAll(entry.maps);
+        }
+        return maps;
+    }
+
+    /**
+     * The file actually used for {@code cacheFile}: itself for eager loads, and a
+     * sibling with {@code .lazy} appended for lazy ones.
+     */
+    static Path fileFor(Path cacheFile, boolean lazy) {
+        return lazy ? cacheFile.resolveSibling(cacheFile.getFileName() + ".lazy") : cacheFile;
+    }
+
+    static String relativeName(Path desRoot, Path desFile) {
+        return desRoot.relativize(desFile).toString().replace('\\', '/');
+    }
+
+    private static long hash(Path file) throws IOException {
+        CRC32C crc = new CRC32C();
+        byte[] buffer = new byte[1 << 16];
+        try (InputStream in = Files.newInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                crc.update(buffer, 0, read);
+            }
+        }
+        return crc.getValue();
+    }
+
+    private static Map<String, Entry> read(Path cacheFile, Path desRoot, boolean lazy,
+                                           RowInterner rowInterner) {
+        Map<String, Entry> entries = new HashMap<>();
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(cacheFile), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION
+                    || !in.readUTF().equals(desRoot.toAbsolutePath().normalize().toString())) {
+                return entries;
+            }
+            int tableBlock = in.readInt();
+            String[] rowTable = null;
+            if (lazy) {
+                in.skipNBytes(tableBlock);
+            } else {
+                rowTable = new String[in.readInt()];
+                for (int i = 0; i < rowTable.length; i++) {
+                    rowTable[i] = rowInterner.intern(in.readUTF());
+                }
+            }
+            int files = in.readInt();
+            for (int f = 0; f < files; f++) {
+                String relative = in.readUTF();
+                long size = in.readLong();
+                long modified = in.readLong();
+                long hash = in.readLong();
+                Path source = desRoot.resolve(relative);
+                MappedDesFile lazyFile = lazy ? new MappedDesFile(source, relative, size, modified, hash) : null;
+                boolean complete = true;
+                int mapCount = in.readInt();
+                List<MapDefinition> maps = new ArrayList<>(mapCount);
+                for (int m = 0; m < mapCount; m++) {
+                    String name = in.readUTF();
+                    int hintCount = in.readInt();
+                    Set<String> hints = new LinkedHashSet<>();
+                    for (int i = 0; i < hintCount; i++) {
+                        hints.add(in.readUTF());
+                    }
+                    MapDirectives directives = MapDirectives.read(in);
+                    int width = in.readInt();
+                    int height = in.readInt();
+                    int bodyOffset = in.readInt();
+                    int bodyLength = in.readInt();
+                    int rowBlock = in.readInt();
+                    List<String> rows = null;
+                    if (lazy) {
+                        if (rowBlock > 0) {
+                            in.skipNBytes(rowBlock);
+                        }
+                    } else if (rowBlock == ROWS_ABSENT) {
+                        complete = false;
+                    } else {
+                        rows = new ArrayList<>(height);
+                        for (int i = 0; i < height; i++) {
+                            rows.add(rowTable[in.readInt()]);
+                        }
+                    }
+                    maps.add(new MapDefinition(name, source, relative, m, hints, directives, width, height,
+                            lazyFile, bodyOffset, bodyLength, rows));
+                }
+                if (complete) {
+                    entries.put(relative, new Entry(size, modified, hash, maps));
+                }
+            }
+            return entries;
+        } catch (NoSuchFileException missing) {
+            return entries;
+        } catch (IOException | RuntimeException corrupt) {
+            // Treat an unreadable cache as empty; it is rewritten after parsing.
+            return new HashMap<>();
+        }
+    }
+
+    private static void write(Path cacheFile, Path desRoot, Map<String, Entry> entries) throws IOException {
+        Path parent = cacheFile.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Path temp = Files.createTempFile(parent, cacheFile.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream raw = Files.newOutputStream(temp);
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(raw, 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeUTF(desRoot.toAbsolutePath().normalize().toString());
+                Map<String, Integer> rowIds = writeRowTable(out, entries);
+                out.writeInt(entries.size());
+                for (Map.Entry<String, Entry> file : entries.entrySet()) {
+                    Entry entry = file.getValue();
+                    out.writeUTF(file.getKey());
+                    out.writeLong(entry.size);
+                    out.writeLong(entry.modified);
+                    out.writeLong(entry.hash);
+                    out.writeInt(entry.maps.size());
+                    for (MapDefinition map : entry.maps) {
+                        out.writeUTF(map.name());
+                        out.writeInt(map.placeHints().size());
+                        for (String hint : map.placeHints()) {
+                            out.writeUTF(hint);
+                        }
+                        map.directives().write(out);
+                        out.writeInt(map.width());
+                        out.writeInt(map.height());
+                        out.writeInt(map.bodyOffset());
+                        out.writeInt(map.bodyLength());
+                        writeRows(out, map, rowIds);
+                    }
+                }
+            }
+            Files.move(temp, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Write every distinct resident row once and return each row's table index.
+     */
+    private static Map<String, Integer> writeRowTable(DataOutputStream out, Map<String, Entry> entries)
+            throws IOException {
+        Map<String, Integer> rowIds = new HashMap<>();
+        ByteArrayOutputStream block = new ByteArrayOutputStream();
+        try (DataOutputStream table = new DataOutputStream(block)) {
+            List<String> distinct = new ArrayList<>();
+            for (Entry entry : entries.values()) {
+                for (MapDefinition map : entry.maps) {
+                    if (!map.rowsLoaded()) {
+                        continue;
+                    }
+                    for (String row : map.rows()) {
+                        if (rowIds.putIfAbsent(row, distinct.size()) == null) {
+                            distinct.add(row);
+                        }
+                    }
+                }
+            }
+            table.writeInt(distinct.size());
+            for (String row : distinct) {
+                table.writeUTF(row);
+            }
+        }
+        out.writeInt(block.size());
+        block.writeTo(out);
+        return rowIds;
+    }
+
+    private static void writeRows(DataOutputStream out, MapDefinition map, Map<String, Integer> rowIds)
+            throws IOException {
+        if (!map.rowsLoaded()) {
+            out.writeInt(ROWS_ABSENT);
+            return;
+        }
+        out.writeInt(map.height() * Integer.BYTES);
+        for (String row : map.rows()) {
+            out.writeInt(rowIds.get(row));
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package org.develz.crawl.tools;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The eight ways a vault can be turned and flipped at placement time, built the
+ * way Crawl does it: an optional quarter turn clockwise, then an optional
+ * horizontal mirror (columns reversed), then an optional vertical mirror (rows
+ * reversed). The TAGS no_rotate, no_hmirror and no_vmirror rule out the
+ * variants that need the corresponding step.
+ */
+enum VaultOrientation {
+    NORMAL(false, false, false),
+    HMIRROR(false, true, false),
+    VMIRROR(false, false, true),
+    ROTATE_180(false, true, true),
+    ROTATE_90(true, false, false),
+    ROTATE_90_HMIRROR(true, true, false),
+    ROTATE_90_VMIRROR(true, false, true),
+    ROTATE_270(true, true, true);
+
+    private static final String NO_ROTATE = "no_rotate";
+    private static final String NO_HMIRROR = "no_hmirror";
+    private static final String NO_VMIRROR = "no_vmirror";
+
+    /** Allowed orientations for each combination of the three tags, as a bit set of forbidden steps. */
+    private static final List<List<VaultOrientation>> ALLOWED = allowedLists();
+
+    private final boolean rotate;
+    private final boolean hmirror;
+    private final boolean vmirror;
+
+    VaultOrientation(boolean rotate, boolean hmirror, boolean vmirror) {
+        this.rotate = rotate;
+        this.hmirror = hmirror;
+        this.vmirror = vmirror;
+    }
+
+    boolean rotates() {
+        return rotate;
+    }
+
+    /**
+     * The side of the level a vault with ORIENT: {@code orient} lies against once
+     * turned to this orientation: a north vault turned a quarter clockwise lies
+     * against the east edge, and mirroring swaps east and west (or north and
+     * south). Values without a side are returned as they are.
+     */
+    MapDirectives.Orient apply(MapDirectives.Orient orient) {
+        if (!orient.directional()) {
+            return orient;
+        }
+        int dx = orient.dx();
+        int dy = orient.dy();
+        if (rotate) {
+            int turned = -dy;
+            dy = dx;
+            dx = turned;
+        }
+        if (hmirror) {
+            dx = -dx;
+        }
+        if (vmirror) {
+            dy = -dy;
+        }
+        return MapDirectives.Orient.toward(dx, dy);
+    }
+
+    /**
+     * The orientations a map with the given directives may be placed in, {@link #NORMAL} first.
+     */
+    static List<VaultOrientation> allowedFor(MapDirectives directives) {
+        int forbidden = (directives.hasTag(NO_ROTATE) ? 1 : 0)
+                | (directives.hasTag(NO_HMIRROR) ? 2 : 0)
+                | (directives.hasTag(NO_VMIRROR) ? 4 : 0);
+        return ALLOWED.get(forbidden);
+    }
+
+    /**
+     * The steps this orientation needs: 1 for the turn, 2 and 4 for the mirrors.
+     */
+    private int steps() {
+        return (rotate ? 1 : 0) | (hmirror ? 2 : 0) | (vmirror ? 4 : 0);
+    }
+
+    private static List<List<VaultOrientation>> allowedLists() {
+        List<List<VaultOrientation>> lists = new ArrayList<>(8);
+        for (int forbidden = 0; forbidden < 8; forbidden++) {
+            List<VaultOrientation> allowed = new ArrayList<>();
+            for (VaultOrientation orientation : values()) {
+                if ((orientation.steps() & forbidden) == 0) {
+                    allowed.add(orientation);
+                }
+            }
+            lists.add(Collections.unmodifiableList(allowed));
+        }
+        return Collections.unmodifiableList(lists);
+    }
+
+    /**
+     * A new grid holding {@code tiles} (a rectangular {@code height} x {@code width}
+     * grid) in this orientation.
+     */
+    char[][] apply(char[][] tiles, int width) {
+        int height = tiles.length;
+        char[][] turned;
+        if (rotate) {
+            turned = new char[width][height];
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    turned[x][height - 1 - y] = tiles[y][x];
+                }
+            }
+        } else {
+            turned = new char[height][];
+            for (int y = 0; y < height; y++) {
+                turned[y] = tiles[y].clone();
+            }
+        }
+        if (hmirror) {
+            for (char[] row : turned) {
+                for (int left = 0, right = row.length - 1; left < right; left++, right--) {
+                    char swap = row[left];
+                    row[left] = row[right];
+                    row[right] = swap;
+                }
+            }
+        }
+        if (vmirror) {
+            for (int top = 0, bottom = turned.length - 1; top < bottom; top++, bottom--) {
+                char[] swap = turned[top];
+                turned[top] = turned[bottom];
+                turned[bottom] = swap;
+            }
+        }
+        return turned;
+    }
+}
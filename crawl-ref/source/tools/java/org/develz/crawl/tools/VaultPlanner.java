@@ -0,0 +1,149 @@
+package org.develz.crawl.tools;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Plans where every selected vault of a level goes before any tile is written.
+ *
+ * Vaults are packed greedily, largest footprint first, each at an offset drawn
+ * uniformly from those where it fits without overlapping the footprints already
+ * planned (tracked as reservations on the {@link PlacementGrid}). If some vault
+ * cannot be fitted, the reservations are dropped and packing starts over, up to
+ * {@link #ROUNDS} times; only then (or as soon as a vault does not fit even on
+ * an empty plan) is the level reported as infeasible. Vaults whose footprints
+ * add up to more than the level's area are rejected without trying.
+ *
+ * A vault that may be turned or flipped starts from a randomly chosen allowed
+ * orientation and falls back to the others in turn, so a variant is only built
+ * (once per map, see {@link MapDefinition#tiles(VaultOrientation)}) when the
+ * ones before it had no room. A vault with a compass or centre ORIENT: is only
+ * offered the offsets along that side, turned with the vault, or the middle one.
+ */
+final class VaultPlanner {
+    static final int ROUNDS = 4;
+
+    private VaultPlanner() {
+    }
+
+    /**
+     * Outcome of planning: either an orientation and offset for every vault, in
+     * input order, or the index of a vault that could not be fitted.
+     */
+    static final class Plan {
+        private final VaultTiles[] tiles;
+        private final int[][] offsets;
+        private final int failed;
+        private final boolean alone;
+
+        private Plan(VaultTiles[] tiles, int[][] offsets, int failed, boolean alone) {
+            this.tiles = tiles;
+            this.offsets = offsets;
+            this.failed = failed;
+            this.alone = alone;
+        }
+
+        boolean feasible() {
+            return failed < 0;
+        }
+
+        /**
+         * Index of the vault that could not be fitted in the last round; -1 if feasible.
+         */
+        int failed() {
+            return failed;
+        }
+
+        /**
+         * True when the failed vault did not fit even with no other vault planned.
+         */
+        boolean failedAlone() {
+            return alone;
+        }
+
+        /**
+         * The vault's tiles in the orientation chosen for it.
+         */
+        VaultTiles tiles(int vault) {
+            return tiles[vault];
+        }
+
+        int x(int vault) {
+            return offsets[vault][0];
+        }
+
+        int y(int vault) {
+            return offsets[vault][1];
+        }
+    }
+
+    static Plan plan(PlacementGrid grid, List<MapDefinition> vaults, Random rng) {
+        List<Integer> order = new ArrayList<>(vaults.size());
+        for (int i = 0; i < vaults.size(); i++) {
+            order.add(i);
+        }
+        // Turning a vault keeps its area, so the packing order holds for every orientation.
+        order.sort(Comparator.comparingInt((Integer i) -> vaults.get(i).width() * vaults.get(i).height())
+                .reversed());
+
+        long area = 0;
+        for (MapDefinition vault : vaults) {
+            area += (long) vault.width() * vault.height();
+        }
+        if (!vaults.isEmpty() && area > (long) grid.width() * grid.height()) {
+            return new Plan(null, null, order.get(0), false);
+        }
+
+        int failed = -1;
+        boolean alone = false;
+        for (int round = 0; round < ROUNDS; round++) {
+            VaultTiles[] tiles = new VaultTiles[vaults.size()];
+            int[][] offsets = new int[vaults.size()][];
+            failed = -1;
+            boolean reservedAny = false;
+            for (int index : order) {
+                if (!place(grid, vaults.get(index), rng, tiles, offsets, index)) {
+                    failed = index;
+                    break;
+                }
+                reservedAny = true;
+                VaultTiles vault = tiles[index];
+                grid.reserve(offsets[index][0], offsets[index][1], vault.width(), vault.height());
+            }
+            grid.clearReservations();
+            if (failed < 0) {
+                return new Plan(tiles, offsets, -1, false);
+            }
+            if (!reservedAny) {
+                alone = true;
+                // It did not fit even on its own; another round cannot help.
+                break;
+            }
+        }
+        return new Plan(null, null, failed, alone);
+    }
+
+    /**
+     * Find an orientation and offset for {@code map}, storing them at {@code index};
+     * false if no allowed orientation fits anywhere.
+     */
+    private static boolean place(PlacementGrid grid, MapDefinition map, Random rng,
+                                 VaultTiles[] tiles, int[][] offsets, int index) {
+        List<VaultOrientation> orientations = map.orientations();
+        int count = orientations.size();
+        int first = count == 1 ? 0 : rng.nextInt(count);
+        for (int i = 0; i < count; i++) {
+            VaultOrientation orientation = orientations.get((first + i) % count);
+            VaultTiles variant = map.tiles(orientation);
+            int[] offset = grid.sample(variant, orientation.apply(map.directives().orient()), rng);
+            if (offset != null) {
+                tiles[index] = variant;
+                offsets[index] = offset;
+                return true;
+            }
+        }
+        return false;
+    }
+}
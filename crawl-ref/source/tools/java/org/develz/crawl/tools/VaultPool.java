@@ -0,0 +1,148 @@
+package org.develz.crawl.tools;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * A filtered candidate pool of vaults for one branch and level, with their
+ * weights and chances resolved for that level and an alias table over the
+ * weights, so that drawing a handful of distinct vaults costs O(k) instead of
+ * shuffling the whole pool. Immutable and safe to share between threads.
+ *
+ * As in Crawl, maps with a CHANCE: are rolled for individually before the
+ * weighted draw and never take part in it.
+ */
+final class VaultPool {
+    static final VaultPool EMPTY = new VaultPool(List.of(), new int[0], new int[0]);
+    /** Weighted samples {@link #draw} may take per vault it still wants before giving up. */
+    static final int DRAW_ATTEMPTS_PER_VAULT = 64;
+
+    private final List<MapDefinition> maps;
+    private final int[] weights;
+    private final int[] chancesByMap;
+    private final int[] chanced;
+    private final int[] chances;
+    private final int[] drawable;
+    private final AliasTable table;
+
+    /**
+     * @param maps    candidates in library order; maps with a non-positive weight are
+     *                kept (so they can still be forced by name) but never drawn
+     * @param weights each map's weight on this level
+     * @param chances each map's chance on this level, out of
+     *                {@link MapDirectives#CHANCE_SCALE}, or -1 if it has none here
+     */
+    VaultPool(List<MapDefinition> maps, int[] weights, int[] chances) {
+        this.maps = Collections.unmodifiableList(new ArrayList<>(maps));
+        this.weights = weights.clone();
+        this.chancesByMap = chances.clone();
+        int rolled = 0;
+        int positive = 0;
+        for (int i = 0; i < maps.size(); i++) {
+            if (chances[i] >= 0) {
+                rolled++;
+            } else if (weights[i] > 0) {
+                positive++;
+            }
+        }
+        this.chanced = new int[rolled];
+        this.chances = new int[rolled];
+        this.drawable = new int[positive];
+        double[] drawWeights = new double[positive];
+        int nextChance = 0;
+        int next = 0;
+        for (int i = 0; i < maps.size(); i++) {
+            if (chances[i] >= 0) {
+                this.chanced[nextChance] = i;
+                this.chances[nextChance] = chances[i];
+                nextChance++;
+            } else if (weights[i] > 0) {
+                drawable[next] = i;
+                drawWeights[next] = weights[i];
+                next++;
+            }
+        }
+        this.table = positive > 0 ? new AliasTable(drawWeights) : null;
+    }
+
+    List<MapDefinition> maps() {
+        return maps;
+    }
+
+    boolean isEmpty() {
+        return maps.isEmpty();
+    }
+
+    /**
+     * This pool less the maps whose {@link MapDefinition#qualifiedName()} is in
+     * {@code qualifiedNames}, with its own alias table; this pool itself if none
+     * of them is in it.
+     */
+    VaultPool without(Set<String> qualifiedNames) {
+        if (qualifiedNames.isEmpty()) {
+            return this;
+        }
+        List<MapDefinition> kept = new ArrayList<>(maps.size());
+        int[] keptWeights = new int[maps.size()];
+        int[] keptChances = new int[maps.size()];
+        for (int i = 0; i < maps.size(); i++) {
+            MapDefinition map = maps.get(i);
+            if (!qualifiedNames.contains(map.qualifiedName())) {
+                keptWeights[kept.size()] = weights[i];
+                keptChances[kept.size()] = chancesByMap[i];
+                kept.add(map);
+            }
+        }
+        if (kept.size() == maps.size()) {
+            return this;
+        }
+        return kept.isEmpty() ? EMPTY : new VaultPool(kept, keptWeights, keptChances);
+    }
+
+    /**
+     * Draw up to {@code count} distinct vaults: first every CHANCE: map whose roll
+     * succeeds, in library order, then the rest by weight, each with probability
+     * proportional to its weight among those not yet drawn.
+     *
+     * The weighted part samples the alias table and rejects repeats, taking at most
+     * {@link #DRAW_ATTEMPTS_PER_VAULT} samples per vault wanted. When the weights
+     * are so skewed that the remaining vaults are almost never hit, the samples
+     * can run out first, and fewer vaults are returned than were asked for and
+     * the pool could supply. Callers take the short list as the draw.
+     */
+    List<MapDefinition> draw(int count, Random rng) {
+        List<MapDefinition> chosen = new ArrayList<>(Math.max(0, count));
+        for (int i = 0; i < chanced.length && chosen.size() < count; i++) {
+            if (rng.nextInt(MapDirectives.CHANCE_SCALE) < chances[i]) {
+                chosen.add(maps.get(chanced[i]));
+            }
+        }
+        int wanted = chosen.size() + Math.min(count - chosen.size(), drawable.length);
+        if (wanted == chosen.size()) {
+            return chosen;
+        }
+        int[] picked = new int[wanted];
+        int rolled = chosen.size();
+        // Rejection keeps each draw O(1); the cap only matters for pathological
+        // weight skews where the remaining vaults are almost never hit.
+        int attempts = DRAW_ATTEMPTS_PER_VAULT * wanted;
+        while (chosen.size() < wanted && attempts-- > 0) {
+            int index = drawable[table.sample(rng)];
+            boolean duplicate = false;
+            for (int i = rolled; i < chosen.size(); i++) {
+                if (picked[i] == index) {
+                    duplicate = true;
+                    break;
+                }
+            }
+            if (!duplicate) {
+                picked[chosen.size()] = index;
+                chosen.add(maps.get(index));
+            }
+        }
+        return chosen;
+    }
+}
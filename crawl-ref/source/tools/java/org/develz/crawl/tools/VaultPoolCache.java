@@ -0,0 +1,51 @@
+package org.develz.crawl.tools;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Bounded least-recently-used cache of candidate pools, keyed on the query they
+ * answer. Thread-safe; pools are built outside the lock, so two threads missing
+ * on the same key at once may both build it and the first one stored wins.
+ */
+final class VaultPoolCache {
+    private final int capacity;
+    private final Map<Object, VaultPool> pools;
+
+    VaultPoolCache(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.pools = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Object, VaultPool> eldest) {
+                return size() > VaultPoolCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * The pool cached for {@code query}, built with {@code filter} and stored if absent.
+     */
+    VaultPool get(Object query, Supplier<VaultPool> filter) {
+        synchronized (pools) {
+            VaultPool pool = pools.get(query);
+            if (pool != null) {
+                return pool;
+            }
+        }
+        VaultPool built = filter.get();
+        synchronized (pools) {
+            VaultPool raced = pools.putIfAbsent(query, built);
+            return raced != null ? raced : built;
+        }
+    }
+
+    int size() {
+        synchronized (pools) {
+            return pools.size();
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package org.develz.crawl.tools;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Set-algebra query over the maps of a {@link VaultLibrary}, e.g. every vault
+ * tagged {@code transparent} but not {@code no_monster_gen} that fits a 40x30
+ * Lair level:
+ *
+ * <pre>
+ * BitSet ids = library.query()
+ *         .withTags("transparent")
+ *         .withoutTags("no_monster_gen")
+ *         .branch("LAIR")
+ *         .fitting(40, 30)
+ *         .ids();
+ * </pre>
+ *
+ * Branch, size and depth are bitsets over library ids from the library's
+ * indexes and are intersected word-wise. What survives is then checked against
+ * the tag masks with {@link TagBits} word operations on each map's own tag
+ * bitset, so no tag strings are compared. When a tag is both required and
+ * excluded, the later call wins.
+ * A query is a cheap, single-use description; it is not thread-safe, but any
+ * number of queries may run against one library concurrently.
+ */
+final class VaultQuery {
+    private final VaultLibrary library;
+    private long[] required = TagBits.EMPTY;
+    private long[] excluded = TagBits.EMPTY;
+    private String branchCode;
+    private int depth;
+    private int maxWidth = -1;
+    private int maxHeight = -1;
+
+    VaultQuery(VaultLibrary library) {
+        this.library = library;
+    }
+
+    /**
+     * Keep only maps carrying every one of {@code tags}.
+     */
+    VaultQuery withTags(String... tags) {
+        long[] mask = TagBits.of(Arrays.asList(tags));
+        required = TagBits.or(required, mask);
+        excluded = TagBits.andNot(excluded, mask);
+        return this;
+    }
+
+    /**
+     * Drop maps carrying any of {@code tags}.
+     */
+    VaultQuery withoutTags(String... tags) {
+        long[] mask = TagBits.of(Arrays.asList(tags));
+        excluded = TagBits.or(excluded, mask);
+        required = TagBits.andNot(required, mask);
+        return this;
+    }
+
+    /**
+     * Keep only maps placeable in {@code branchCode}, as for vault selection.
+     */
+    VaultQuery branch(String branchCode) {
+        this.branchCode = Objects.requireNonNull(branchCode, "branchCode").toUpperCase();
+        return this;
+    }
+
+    /**
+     * Keep only maps whose DEPTH: allows level {@code depth} of the query's branch
+     * (the Dungeon if none is set).
+     */
+    VaultQuery depth(int depth) {
+        this.depth = Math.max(1, depth);
+        return this;
+    }
+
+    /**
+     * Keep only non-empty maps that fit within {@code width} x {@code height}.
+     */
+    VaultQuery fitting(int width, int height) {
+        this.maxWidth = width;
+        this.maxHeight = height;
+        return this;
+    }
+
+    /**
+     * Ids of the matching maps. The returned set is a fresh copy.
+     */
+    BitSet ids() {
+        BitSet result;
+        if (maxWidth >= 0) {
+            result = (BitSet) library.mapsFitting(maxWidth, maxHeight).clone();
+        } else {
+            result = new BitSet(library.size());
+            result.set(0, library.size());
+        }
+        if (branchCode != null) {
+            result.and(library.branchSet(branchCode));
+        }
+        if (depth > 0) {
+            result.and(library.mapsAtDepth(branchCode != null ? branchCode : DepthRanges.DEFAULT_BRANCH, depth));
+        }
+        if (required.length == 0 && excluded.length == 0) {
+            return result;
+        }
+        List<MapDefinition> all = library.maps();
+        for (int id = result.nextSetBit(0); id >= 0; id = result.nextSetBit(id + 1)) {
+            long[] tags = all.get(id).directives().tagBits();
+            if (!TagBits.containsAll(tags, required) || TagBits.intersects(tags, excluded)) {
+                result.clear(id);
+            }
+        }
+        return result;
+    }
+
+    int count() {
+        return ids().cardinality();
+    }
+
+    /**
+     * The matching maps, in library order.
+     */
+    List<MapDefinition> maps() {
+        BitSet ids = ids();
+        List<MapDefinition> all = library.maps();
+        List<MapDefinition> matches = new ArrayList<>(ids.cardinality());
+        for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+            matches.add(all.get(id));
+        }
+        return matches;
+    }
+}
@@ -0,0 +1,48 @@
+package org.develz.crawl.tools;
+
+/**
+ * Placement-ready form of a vault body: the padded tile grid plus a bit-packed
+ * mask of its solid cells (every glyph other than ' '), one {@code long} per 64
+ * columns of each row. Built once per map and shared; neither array may be
+ * modified.
+ */
+final class VaultTiles {
+    private final char[][] tiles;
+    private final long[][] solid;
+    private final int width;
+
+    VaultTiles(char[][] tiles, int width) {
+        this.tiles = tiles;
+        this.width = width;
+        int words = CellMask.words(width);
+        this.solid = new long[tiles.length][words];
+        for (int y = 0; y < tiles.length; y++) {
+            long[] row = solid[y];
+            for (int x = 0; x < width; x++) {
+                if (tiles[y][x] != ' ') {
+                    row[x >>> 6] |= 1L << x;
+                }
+            }
+        }
+    }
+
+    int width() {
+        return width;
+    }
+
+    int height() {
+        return tiles.length;
+    }
+
+    char[][] tiles() {
+        return tiles;
+    }
+
+    /**
+     * Solid-cell mask, one array of words per row; bit {@code x & 63} of word
+     * {@code x >>> 6} is set when column {@code x} is not ' '.
+     */
+    long[][] solid() {
+        return solid;
+    }
+}
@@ -0,0 +1,25 @@
+#!/usr/bin/env bash
+# Build the tools, the optional vector kernel and the tests, then run every
+# *Test class under test/. Needs only a JDK (17 or later).
+set -euo pipefail
+ROOT=$(cd "$(dirname "$0")" && pwd)
+OUT=$(mktemp -d)
+trap 'rm -rf "$OUT"' EXIT
+cd "$ROOT"
+
+javac -encoding UTF-8 -Xlint:all -d "$OUT/main" $(find org -name '*.java')
+CLASSES="$OUT/main"
+JAVA_FLAGS=()
+if javac -encoding UTF-8 --add-modules jdk.incubator.vector -cp "$OUT/main" -d "$OUT/vector" \
+        $(find vector -name '*.java') 2>/dev/null; then
+    CLASSES="$CLASSES:$OUT/vector"
+    JAVA_FLAGS+=(--add-modules jdk.incubator.vector)
+else
+    echo "jdk.incubator.vector is not available; testing without the vector kernel"
+fi
+javac -encoding UTF-8 -Xlint:all -cp "$CLASSES" -d "$OUT/test" $(find test -name '*.java')
+
+for test in $(cd test && find . -name '*Test.java' | sed 's|^\./||; s|\.java$||; s|/|.|g' | sort); do
+    echo "== $test"
+    java ${JAVA_FLAGS[@]+"${JAVA_FLAGS[@]}"} -cp "$CLASSES:$OUT/test" "$test"
+done
@@ -0,0 +1,53 @@
+package org.develz.crawl.tools;
+
+import static org.develz.crawl.tools.Checks.check;
+import static org.develz.crawl.tools.Checks.checkEquals;
+import static org.develz.crawl.tools.Checks.checkThrows;
+
+import java.util.Random;
+
+/**
+ * {@link AliasTable} must draw each index in proportion to its weight, never
+ * draw a zero weight, and refuse weights that cannot be drawn from.
+ */
+public final class AliasTableTest {
+    private static final int SAMPLES = 400_000;
+
+    private AliasTableTest() {
+    }
+
+    public static void main(String[] args) {
+        distribution(new double[] {1, 2, 3, 4, 0, 10});
+        distribution(new double[] {0.5, 1000, 0.25, 0.25});
+        distribution(new double[] {7});
+        checkThrows(IllegalArgumentException.class, () -> new AliasTable(new double[0]), "no weights");
+        checkThrows(IllegalArgumentException.class, () -> new AliasTable(new double[] {0, 0}), "zero total weight");
+        System.out.println("AliasTableTest: ok");
+    }
+
+    private static void distribution(double[] weights) {
+        AliasTable table = new AliasTable(weights);
+        Random rng = new Random(0xA11A5);
+        int[] counts = new int[weights.length];
+        for (int i = 0; i < SAMPLES; i++) {
+            counts[table.sample(rng)]++;
+        }
+        double total = 0;
+        for (double weight : weights) {
+            total += weight;
+        }
+        for (int i = 0; i < weights.length; i++) {
+            double expected = weights[i] / total;
+            if (expected == 0) {
+                checkEquals(0, counts[i], "draws of zero-weight index " + i);
+                continue;
+            }
+            double observed = (double) counts[i] / SAMPLES;
+            // Five standard deviations of a binomial proportion: a real bias fails,
+            // sampling noise with this fixed seed does not.
+            double tolerance = 5 * Math.sqrt(expected * (1 - expected) / SAMPLES);
+            check(Math.abs(observed - expected) <= tolerance, "index " + i + " drawn with frequency " + observed
+                    + ", expected " + expected + " +- " + tolerance);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package org.develz.crawl.tools;
+
+import static org.develz.crawl.tools.Checks.checkEquals;
+import static org.develz.crawl.tools.Checks.checkThrows;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * {@link BitGrid} against a plain {@code boolean[][]} model: cell writes, word-wise
+ * rectangle fills, floor listing and conversion to a glyph {@link Grid}, over
+ * widths on both sides of the 64-column word boundaries.
+ */
+public final class BitGridTest {
+    private static final char WALL = '#';
+    private static final char FLOOR = '.';
+
+    private BitGridTest() {
+    }
+
+    public static void main(String[] args) {
+        Random rng = new Random(0xB17);
+        int[] widths = {1, 2, 5, 63, 64, 65, 80, 127, 128, 129, 200};
+        for (int width : widths) {
+            for (int height : new int[] {1, 3, 70}) {
+                compare(width, height, rng);
+            }
+        }
+        bounds();
+        System.out.println("BitGridTest: ok");
+    }
+
+    private static void compare(int width, int height, Random rng) {
+        String size = width + "x" + height;
+        boolean[][] model = new boolean[height][width];
+        BitGrid grid = new BitGrid(width, height, false);
+        for (int step = 0; step < 200; step++) {
+            if (rng.nextInt(4) == 0) {
+                int x0 = rng.nextInt(width + 1);
+                int x1 = x0 + rng.nextInt(width - x0 + 1);
+                int y0 = rng.nextInt(height + 1);
+                int y1 = y0 + rng.nextInt(height - y0 + 1);
+                boolean wall = rng.nextBoolean();
+                grid.fillRect(x0, y0, x1, y1, wall);
+                for (int y = y0; y < y1; y++) {
+                    for (int x = x0; x < x1; x++) {
+                        model[y][x] = wall;
+                    }
+                }
+            } else {
+                int x = rng.nextInt(width);
+                int y = rng.nextInt(height);
+                boolean wall = rng.nextBoolean();
+                grid.set(x, y, wall);
+                model[y][x] = wall;
+            }
+        }
+
+        List<String> floors = new ArrayList<>();
+        for (int y = 0; y < height; y++) {
+            StringBuilder row = new StringBuilder(width);
+            for (int x = 0; x < width; x++) {
+                checkEquals(model[y][x], grid.isWall(x, y), "isWall(" + x + ", " + y + ") of " + size);
+                row.append(model[y][x] ? WALL : FLOOR);
+                if (!model[y][x]) {
+                    floors.add(x + "," + y);
+                }
+            }
+            checkEquals(row.toString(), grid.toGrid(WALL, FLOOR).row(y), "toGrid row " + y + " of " + size);
+        }
+        List<String> listed = new ArrayList<>();
+        for (int[] cell : grid.floorCells()) {
+            listed.add(cell[0] + "," + cell[1]);
+        }
+        checkEquals(floors, listed, "floorCells of " + size);
+
+        grid.fill(true);
+        checkEquals(0, grid.floorCells().size(), "floor cells of a filled " + size);
+        grid.fillRect(0, 0, width, height, false);
+        checkEquals(width * height, grid.floorCells().size(), "floor cells of a cleared " + size);
+    }
+
+    private static void bounds() {
+        BitGrid grid = new BitGrid(4, 4, true);
+        grid.fillRect(3, 1, 3, 9, false);
+        grid.fillRect(2, 5, 9, 5, false);
+        checkEquals(0, grid.floorCells().size(), "empty rectangles are ignored, even off the grid");
+        checkThrows(IndexOutOfBoundsException.class, () -> grid.fillRect(0, 0, 5, 4, false), "past the right edge");
+        checkThrows(IndexOutOfBoundsException.class, () -> grid.fillRect(0, 2, 4, 5, false), "past the bottom edge");
+        checkThrows(IndexOutOfBoundsException.class, () -> grid.fillRect(-1, 0, 2, 2, false), "left of the grid");
+        checkThrows(IndexOutOfBoundsException.class, () -> grid.fillRect(0, -1, 2, 2, false), "above the grid");
+
+        // Column 4 of a 4-wide grid is still inside the row's first word.
+        checkThrows(IndexOutOfBoundsException.class, () -> grid.setFloor(4, 0), "setFloor past the right edge");
+        checkThrows(IndexOutOfBoundsException.class, () -> grid.setWall(-1, 0), "setWall left of the grid");
+        checkThrows(IndexOutOfBoundsException.class, () -> grid.set(0, 4, false), "set below the grid");
+        checkThrows(IndexOutOfBoundsException.class, () -> grid.isWall(64, 1), "isWall past the row's word");
+        checkThrows(IndexOutOfBoundsException.class, () -> grid.isWall(0, -1), "isWall above the grid");
+        checkEquals(0, grid.floorCells().size(), "rejected writes leave the grid alone");
+    }
+}
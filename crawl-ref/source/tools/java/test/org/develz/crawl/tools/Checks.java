@@ -0,0 +1,39 @@
+package org.develz.crawl.tools;
+
+import java.util.Objects;
+
+/**
+ * Assertions for the tool tests, which run as plain {@code main} classes (see
+ * run-tests.sh) so that they need nothing beyond the JDK.
+ */
+final class Checks {
+    private Checks() {
+    }
+
+    static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+
+    static void checkEquals(Object expected, Object actual, String what) {
+        if (!Objects.equals(expected, actual)) {
+            throw new AssertionError(what + ": expected <" + expected + "> but was <" + actual + ">");
+        }
+    }
+
+    /**
+     * Run {@code body} and check that it throws {@code type}.
+     */
+    static void checkThrows(Class<? extends Throwable> type, Runnable body, String what) {
+        try {
+            body.run();
+        } catch (Throwable thrown) {
+            if (type.isInstance(thrown)) {
+                return;
+            }
+            throw new AssertionError(what + ": expected " + type.getSimpleName() + " but got " + thrown, thrown);
+        }
+        throw new AssertionError(what + ": expected " + type.getSimpleName() + " but nothing was thrown");
+    }
+}
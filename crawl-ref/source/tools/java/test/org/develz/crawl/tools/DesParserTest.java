@@ -0,0 +1,183 @@
+package org.develz.crawl.tools;
+
+import static org.develz.crawl.tools.Checks.check;
+import static org.develz.crawl.tools.Checks.checkEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Checks {@link DesParser} against the regex line parser it replaced, kept here
+ * as {@link #referenceParse}: every map must come out with the same name, place
+ * hints and rows, in eager and in lazy mode, for the fixtures under
+ * test/fixtures/dat/des (also rewritten with CR LF and lone CR line ends) and for
+ * the game's own dat/des when it is present. Paths are relative to tools/java,
+ * where run-tests.sh runs the tests.
+ */
+public final class DesParserTest {
+    private static final Path FIXTURES = Fixtures.DES_ROOT;
+    private static final Path GAME_DES = Paths.get("../../dat/des");
+
+    private DesParserTest() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        int maps = compareTree(FIXTURES);
+        check(maps >= 9, "fixtures hold " + maps + " maps");
+        compareLineEnds("\r\n");
+        compareLineEnds("\r");
+        if (Files.isDirectory(GAME_DES)) {
+            System.out.println("dat/des: " + compareTree(GAME_DES) + " maps match");
+        }
+        checkAnonymousNames();
+        System.out.println("DesParserTest: " + maps + " fixture maps match");
+    }
+
+    private static int compareTree(Path desRoot) throws IOException {
+        int maps = 0;
+        for (Path desFile : Fixtures.desFiles(desRoot)) {
+            maps += compare(desRoot, desFile);
+        }
+        return maps;
+    }
+
+    private static void compareLineEnds(String lineEnd) throws IOException {
+        Path copy = Files.createTempDirectory("des-line-ends");
+        try {
+            for (Path desFile : Fixtures.desFiles(FIXTURES)) {
+                Path target = copy.resolve(FIXTURES.relativize(desFile).toString());
+                Files.createDirectories(target.getParent());
+                String text = new String(Files.readAllBytes(desFile), StandardCharsets.UTF_8);
+                Files.write(target, text.replace("\n", lineEnd).getBytes(StandardCharsets.UTF_8));
+            }
+            compareTree(copy);
+        } finally {
+            Fixtures.deleteTree(copy);
+        }
+    }
+
+    private static int compare(Path desRoot, Path desFile) throws IOException {
+        List<ReferenceMap> expected = referenceParse(desFile);
+        for (boolean lazy : new boolean[] {false, true}) {
+            List<MapDefinition> actual = DesParser.parse(desRoot, desFile, lazy, new RowInterner());
+            String where = desFile + (lazy ? " (lazy)" : " (eager)");
+            checkEquals(expected.size(), actual.size(), where + " map count");
+            for (int i = 0; i < expected.size(); i++) {
+                ReferenceMap reference = expected.get(i);
+                MapDefinition map = actual.get(i);
+                String what = where + " map " + i;
+                checkEquals(reference.name, map.name(), what + " name");
+                checkEquals(reference.placeHints, map.placeHints(), what + " place hints");
+                checkEquals(reference.rows.size(), map.height(), what + " height");
+                checkEquals(reference.width(), map.width(), what + " width");
+                checkEquals(reference.rows, map.rows(), what + " rows");
+                checkEquals(VaultLibraryCache.relativeName(desRoot, desFile), map.relativeSource(),
+                        what + " source");
+            }
+        }
+        return expected.size();
+    }
+
+    /**
+     * Anonymous maps are numbered per file, so two files can both have an
+     * {@code anonymous-1}; only the source tells them apart.
+     */
+    private static void checkAnonymousNames() throws IOException {
+        List<MapDefinition> first = DesParser.parse(FIXTURES, FIXTURES.resolve("sample.des"), false,
+                new RowInterner());
+        List<MapDefinition> second = DesParser.parse(FIXTURES, FIXTURES.resolve("branch/second.des"), false,
+                new RowInterner());
+        checkEquals("anonymous-1", first.get(2).name(), "first anonymous map in sample.des");
+        checkEquals("anonymous-1", second.get(0).name(), "first anonymous map in second.des");
+        checkEquals("branch/second.des", second.get(0).relativeSource(), "relative source");
+    }
+
+    /**
+     * The line parser from before {@link DesParser}, less the MapDefinition it built.
+     */
+    private static List<ReferenceMap> referenceParse(Path desFile) throws IOException {
+        List<String> rawLines = Files.readAllLines(desFile, StandardCharsets.UTF_8);
+        List<ReferenceMap> maps = new ArrayList<>();
+        List<String> buffer = null;
+        String currentName = null;
+        int anonymousCount = 0;
+        Set<String> placeHints = new LinkedHashSet<>();
+        Pattern placeDirective = Pattern.compile("^PLACE:\\s*(.+)$", Pattern.CASE_INSENSITIVE);
+        Pattern placeFunction = Pattern.compile("place\\(\\\"([^\\\"]+)\\\"", Pattern.CASE_INSENSITIVE);
+
+        for (String rawLine : rawLines) {
+            String trimmed = rawLine.trim();
+            if (trimmed.startsWith("NAME:")) {
+                currentName = trimmed.substring("NAME:".length()).trim();
+            }
+
+            Matcher directiveMatcher = placeDirective.matcher(trimmed);
+            if (directiveMatcher.find()) {
+                for (String token : directiveMatcher.group(1).split(",")) {
+                    collectPlaceHints(placeHints, token);
+                }
+            }
+
+            Matcher functionMatcher = placeFunction.matcher(trimmed);
+            while (functionMatcher.find()) {
+                collectPlaceHints(placeHints, functionMatcher.group(1));
+            }
+
+            if (trimmed.startsWith("MAP")) {
+                buffer = new ArrayList<>();
+                continue;
+            }
+            if (trimmed.startsWith("ENDMAP")) {
+                if (buffer != null) {
+                    String name = currentName != null ? currentName : "anonymous-" + (++anonymousCount);
+                    maps.add(new ReferenceMap(name, buffer, new LinkedHashSet<>(placeHints)));
+                }
+                buffer = null;
+                currentName = null;
+                continue;
+            }
+            if (buffer != null) {
+                buffer.add(rawLine);
+            }
+        }
+        return maps;
+    }
+
+    private static void collectPlaceHints(Set<String> placeHints, String token) {
+        String cleaned = token.trim();
+        if (cleaned.isEmpty()) {
+            return;
+        }
+        String upper = cleaned.toUpperCase();
+        placeHints.add(upper);
+        int colon = upper.indexOf(':');
+        if (colon > 0) {
+            placeHints.add(upper.substring(0, colon));
+        }
+    }
+
+    private static final class ReferenceMap {
+        private final String name;
+        private final List<String> rows;
+        private final Set<String> placeHints;
+
+        private ReferenceMap(String name, List<String> rows, Set<String> placeHints) {
+            this.name = name;
+            this.rows = rows;
+            this.placeHints = placeHints;
+        }
+
+        private int width() {
+            return rows.stream().mapToInt(String::length).max().orElse(0);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package org.develz.crawl.tools;
+
+import static org.develz.crawl.tools.Checks.check;
+import static org.develz.crawl.tools.Checks.checkEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * The selection directives parsed from test/fixtures/dat/des/directives.des:
+ * DEPTH: ranges (open, '$', bare, denied with '!' and split over two lines), a
+ * file's default-depth: for maps without their own, WEIGHT: and CHANCE: values
+ * chosen by depth, and entries too malformed to use. Each map is checked as
+ * parsed and after a round trip through the cache encoding.
+ */
+public final class DirectivesTest {
+    private DirectivesTest() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        List<MapDefinition> maps = DesParser.parse(Fixtures.DES_ROOT, Fixtures.DES_ROOT.resolve("directives.des"),
+                false, new RowInterner());
+        checkEquals(4, maps.size(), "maps in directives.des");
+        for (int i = 0; i < maps.size(); i++) {
+            MapDirectives parsed = maps.get(i).directives();
+            MapDirectives cached = roundTrip(parsed);
+            for (MapDirectives directives : new MapDirectives[] {parsed, cached}) {
+                String what = maps.get(i).name() + (directives == cached ? " (cached)" : "");
+                switch (i) {
+                    case 0:
+                        checkInherited(directives, what);
+                        break;
+                    case 1:
+                        checkRanges(directives, what);
+                        break;
+                    case 2:
+                        checkPlain(directives, what);
+                        break;
+                    default:
+                        checkMalformed(directives, what);
+                        break;
+                }
+            }
+        }
+        System.out.println("DirectivesTest: ok");
+    }
+
+    /**
+     * default-depth: D:4-$, !D:10
+     */
+    private static void checkInherited(MapDirectives directives, String what) {
+        check(directives.hasDepths(), what + " inherits the default depth");
+        checkDepths(directives, what, "D:3", false, "D:4", true, "D:9", true, "D:10", false, "D:15", true,
+                "Lair:4", false);
+        checkEquals(MapDirectives.DEFAULT_WEIGHT, directives.weightAt("D", 5), what + " weight");
+        checkEquals(0, directives.chanceAt("D", 5), what + " chance");
+    }
+
+    /**
+     * DEPTH: D:2-5, Lair, Depths:2-, !Lair:3 then DEPTH: 7;
+     * WEIGHT: 20 (D:3-4), 0 (Lair), 5; CHANCE: 2.5% (Depths), 1000 (D:$)
+     */
+    private static void checkRanges(MapDirectives directives, String what) {
+        checkDepths(directives, what, "D:1", false, "D:2", true, "D:5", true, "D:6", false, "D:7", true,
+                "Lair:1", true, "Lair:3", false, "Lair:5", true, "Depths:1", false, "Depths:2", true,
+                "Depths:4", true, "Swamp:2", false, "Swamp:7", true);
+        checkEquals(20, directives.weightAt("D", 3), what + " weight at D:3");
+        checkEquals(20, directives.weightAt("D", 4), what + " weight at D:4");
+        checkEquals(5, directives.weightAt("D", 2), what + " weight at D:2");
+        checkEquals(0, directives.weightAt("LAIR", 2), what + " weight at Lair:2");
+        checkEquals(5, directives.weightAt("DEPTHS", 2), what + " weight at Depths:2");
+        checkEquals(250, directives.chanceAt("DEPTHS", 3), what + " chance at Depths:3");
+        checkEquals(1000, directives.chanceAt("D", 15), what + " chance at D:15");
+        checkEquals(0, directives.chanceAt("D", 14), what + " chance at D:14");
+    }
+
+    /**
+     * DEPTH: Elf:$, -3; WEIGHT: 7; CHANCE: 150%
+     */
+    private static void checkPlain(MapDirectives directives, String what) {
+        checkDepths(directives, what, "Elf:3", true, "Elf:1", true, "D:3", true, "D:4", false, "Lair:4", false);
+        checkEquals(7, directives.weightAt("LAIR", 4), what + " weight");
+        checkEquals(MapDirectives.CHANCE_SCALE, directives.chanceAt("D", 1), what + " chance is capped");
+    }
+
+    /**
+     * DEPTH: D:0, :3, Orc:x-2; WEIGHT: heavy, 3 (
+     */
+    private static void checkMalformed(MapDirectives directives, String what) {
+        check(!directives.hasDepths(), what + " keeps no unusable DEPTH: entry, nor the default depth");
+        checkEquals(MapDirectives.DEFAULT_WEIGHT, directives.weightAt("D", 3), what + " weight");
+    }
+
+    /**
+     * {@code levels} alternates "Branch:depth" and whether DEPTH: should allow it.
+     */
+    private static void checkDepths(MapDirectives directives, String what, Object... levels) {
+        for (int i = 0; i < levels.length; i += 2) {
+            String[] level = ((String) levels[i]).split(":");
+            boolean allowed = directives.depths().matches(level[0].toUpperCase(), Integer.parseInt(level[1]));
+            checkEquals(levels[i + 1], allowed, what + " allowed at " + levels[i]);
+        }
+    }
+
+    private static MapDirectives roundTrip(MapDirectives directives) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            directives.write(out);
+        }
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            return MapDirectives.read(in);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package org.develz.crawl.tools;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * The hand-written .des fixtures, laid out under test/fixtures as in a Crawl
+ * source tree (dat/des) so that {@link VaultLibrary#load} can read them too.
+ * Paths are relative to tools/java, where run-tests.sh runs the tests.
+ */
+final class Fixtures {
+    static final Path SOURCE_ROOT = Paths.get("test/fixtures");
+    static final Path DES_ROOT = SOURCE_ROOT.resolve("dat/des");
+
+    private Fixtures() {
+    }
+
+    /**
+     * The .des files under {@code desRoot}, in library order.
+     */
+    static List<Path> desFiles(Path desRoot) throws IOException {
+        try (Stream<Path> walk = Files.walk(desRoot)) {
+            return walk.filter(path -> path.toString().endsWith(".des"))
+                    .sorted(Comparator.comparing(path -> VaultLibraryCache.relativeName(desRoot, path)))
+                    .collect(Collectors.toList());
+        }
+    }
+
+    static List<Path> desFiles() throws IOException {
+        return desFiles(DES_ROOT);
+    }
+
+    /**
+     * Every fixture map, parsed without a cache, in library order.
+     */
+    static List<MapDefinition> maps(boolean lazy) throws IOException {
+        List<MapDefinition> maps = new ArrayList<>();
+        for (List<MapDefinition> parsed : VaultLibrary.parseDesFiles(DES_ROOT, desFiles(), lazy,
+                new RowInterner())) {
+            maps.addAll(parsed);
+        }
+        return maps;
+    }
+
+    /**
+     * Delete {@code root} and everything under it.
+     */
+    static void deleteTree(Path root) throws IOException {
+        try (Stream<Path> walk = Files.walk(root)) {
+            for (Path path : walk.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.delete(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package org.develz.crawl.tools;
+
+import static org.develz.crawl.tools.Checks.check;
+import static org.develz.crawl.tools.Checks.checkEquals;
+import static org.develz.crawl.tools.Checks.checkThrows;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Glyphs written to a {@link Grid}, ASCII or not, must read back unchanged
+ * through every accessor and through {@link Grid#toCharArray()}.
+ */
+public final class GridTest {
+    private static final char[] GLYPHS = {
+        '#', '.', ' ', '+', '*', '<', '>', 'x', '~', '·', '≈', '♣', 'é', '▒'
+    };
+
+    private GridTest() {
+    }
+
+    public static void main(String[] args) {
+        for (long seed = 1; seed <= 20; seed++) {
+            Random rng = new Random(seed);
+            int width = 1 + rng.nextInt(90);
+            int height = 1 + rng.nextInt(80);
+            roundTrip(width, height, rng);
+        }
+        extendedTableLimit();
+        System.out.println("GridTest: ok");
+    }
+
+    private static void roundTrip(int width, int height, Random rng) {
+        Grid grid = new Grid(width, height, '#');
+        char[][] expected = new char[height][width];
+        for (char[] row : expected) {
+            Arrays.fill(row, '#');
+        }
+        for (int i = 0; i < width * height; i++) {
+            int x = rng.nextInt(width);
+            int y = rng.nextInt(height);
+            char glyph = GLYPHS[rng.nextInt(GLYPHS.length)];
+            if (rng.nextBoolean()) {
+                grid.set(x, y, glyph);
+            } else {
+                grid.setAt(grid.index(x, y), glyph);
+            }
+            expected[y][x] = glyph;
+        }
+        String size = width + "x" + height;
+        char[][] tiles = grid.toCharArray();
+        checkEquals(height, tiles.length, "rows of " + size);
+        for (int y = 0; y < height; y++) {
+            checkEquals(new String(expected[y]), new String(tiles[y]), "toCharArray row " + y + " of " + size);
+            checkEquals(new String(expected[y]), grid.row(y), "row " + y + " of " + size);
+            for (int x = 0; x < width; x++) {
+                checkEquals(expected[y][x], grid.get(x, y), "get(" + x + ", " + y + ") of " + size);
+                checkEquals(expected[y][x], grid.at(grid.index(x, y)), "at(" + x + ", " + y + ") of " + size);
+                if (expected[y][x] < 0x80) {
+                    checkEquals((byte) expected[y][x], grid.cells()[grid.index(x, y)], "ASCII cell byte");
+                }
+            }
+        }
+        tiles[0][0] = '?';
+        check(grid.get(0, 0) != '?', "toCharArray returns a copy");
+
+        grid.fill('≈');
+        for (int y = 0; y < height; y++) {
+            checkEquals("≈".repeat(width), grid.row(y), "filled row " + y + " of " + size);
+        }
+    }
+
+    private static void extendedTableLimit() {
+        Grid grid = new Grid(16, 16, '.');
+        for (int i = 0; i < 128; i++) {
+            grid.setAt(i, (char) (0x100 + i));
+        }
+        for (int i = 0; i < 128; i++) {
+            checkEquals((char) (0x100 + i), grid.at(i), "extended glyph " + i);
+        }
+        checkThrows(IllegalStateException.class, () -> grid.setAt(128, (char) 0x200), "129th non-ASCII glyph");
+    }
+}
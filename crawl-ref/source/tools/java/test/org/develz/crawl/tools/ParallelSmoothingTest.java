@@ -0,0 +1,61 @@
+package org.develz.crawl.tools;
+
+import static org.develz.crawl.tools.Checks.check;
+import static org.develz.crawl.tools.Checks.checkEquals;
+
+import java.util.Random;
+
+/**
+ * Smoothing a grid above {@link BitGrid#PARALLEL_CELLS} in row stripes must give
+ * the same grid as smoothing it in one pass, whatever the number of stripes,
+ * including stripes of a single row and stripe edges inside a word row.
+ */
+public final class ParallelSmoothingTest {
+    private static final int STEPS = 3;
+
+    private ParallelSmoothingTest() {
+    }
+
+    public static void main(String[] args) {
+        int width = 600;
+        int height = 450;
+        check((long) width * height >= BitGrid.PARALLEL_CELLS, "test grid is above the parallel threshold");
+        BitGrid start = new BitGrid(width, height, false);
+        Random rng = new Random(0x9A4A);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                start.set(x, y, rng.nextDouble() < 0.45);
+            }
+        }
+        Grid expected = smooth(start, 1);
+        for (int stripes : new int[] {2, 3, 4, 7, 64, height}) {
+            Grid actual = smooth(start, stripes);
+            for (int y = 0; y < height; y++) {
+                checkEquals(expected.row(y), actual.row(y), "row " + y + " with " + stripes + " stripes");
+            }
+        }
+        Grid automatic = smoothDefault(start);
+        for (int y = 0; y < height; y++) {
+            checkEquals(expected.row(y), automatic.row(y), "row " + y + " with the default striping");
+        }
+        System.out.println("ParallelSmoothingTest: ok");
+    }
+
+    private static Grid smooth(BitGrid start, int stripes) {
+        BitGrid current = start;
+        for (int step = 0; step < STEPS; step++) {
+            BitGrid next = new BitGrid(start.width(), start.height(), true);
+            current.smoothInto(next, stripes);
+            current = next;
+        }
+        return current.toGrid('#', '.');
+    }
+
+    private static Grid smoothDefault(BitGrid start) {
+        BitGrid current = start;
+        for (int step = 0; step < STEPS; step++) {
+            current = current.smooth();
+        }
+        return current.toGrid('#', '.');
+    }
+}
@@ -0,0 +1,80 @@
+package org.develz.crawl.tools;
+
+import static org.develz.crawl.tools.Checks.check;
+import static org.develz.crawl.tools.Checks.checkEquals;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * {@link PlacementGrid#sample} must only offer the offsets an ORIENT: allows,
+ * every one of them with some chance, and none that overlap a reservation.
+ */
+public final class PlacementGridTest {
+    private static final int WIDTH = 20;
+    private static final int HEIGHT = 10;
+
+    private PlacementGridTest() {
+    }
+
+    public static void main(String[] args) {
+        VaultTiles vault = new VaultTiles(new char[][] {
+            "xxxx".toCharArray(), "x..x".toCharArray(), "xxxx".toCharArray()}, 4);
+        int spanX = WIDTH - vault.width() + 1;
+        int spanY = HEIGHT - vault.height() + 1;
+        for (MapDirectives.Orient orient : MapDirectives.Orient.values()) {
+            Set<Integer> expected = new HashSet<>();
+            for (int y = 0; y < spanY; y++) {
+                for (int x = 0; x < spanX; x++) {
+                    if (allowed(orient, x, y, spanX, spanY)) {
+                        expected.add(y * spanX + x);
+                    }
+                }
+            }
+            checkEquals(expected, offsets(new PlacementGrid(new Grid(WIDTH, HEIGHT, '#')), vault, orient),
+                    "offsets for ORIENT " + orient);
+        }
+
+        PlacementGrid reserved = new PlacementGrid(new Grid(WIDTH, HEIGHT, '#'));
+        reserved.reserve(0, 0, 10, HEIGHT);
+        for (int offset : offsets(reserved, vault, MapDirectives.Orient.NORTH)) {
+            check(offset % spanX >= 10 && offset / spanX == 0, "north offset " + offset + " clear of the reservation");
+        }
+        check(new PlacementGrid(new Grid(WIDTH, HEIGHT, '#')).sample(
+                new VaultTiles(new char[WIDTH + 1][WIDTH + 1], WIDTH + 1), MapDirectives.Orient.FLOAT,
+                new Random(1)) == null, "a vault larger than the level has no offset");
+        reserved.reserve(10, 0, 10, 1);
+        check(reserved.sample(vault, MapDirectives.Orient.NORTH, new Random(1)) == null,
+                "no north offset once the north edge is reserved");
+        System.out.println("PlacementGridTest: ok");
+    }
+
+    private static boolean allowed(MapDirectives.Orient orient, int x, int y, int spanX, int spanY) {
+        switch (orient) {
+            case ENCOMPASS:
+            case CENTRE:
+                return x == (spanX - 1) / 2 && y == (spanY - 1) / 2;
+            case NONE:
+            case FLOAT:
+                return true;
+            default:
+                return (orient.dx() == 0 || x == (orient.dx() < 0 ? 0 : spanX - 1))
+                        && (orient.dy() == 0 || y == (orient.dy() < 0 ? 0 : spanY - 1));
+        }
+    }
+
+    /**
+     * Every offset, as y * span + x, that 5000 seeded samples produced.
+     */
+    private static Set<Integer> offsets(PlacementGrid grid, VaultTiles vault, MapDirectives.Orient orient) {
+        int spanX = grid.width() - vault.width() + 1;
+        Random rng = new Random(0x0F1E);
+        Set<Integer> seen = new HashSet<>();
+        for (int i = 0; i < 5000; i++) {
+            int[] offset = grid.sample(vault, orient, rng);
+            seen.add(offset[1] * spanX + offset[0]);
+        }
+        return seen;
+    }
+}
@@ -0,0 +1,91 @@
+package org.develz.crawl.tools;
+
+import static org.develz.crawl.tools.Checks.checkEquals;
+
+import java.util.Random;
+
+/**
+ * Cave smoothing three ways must agree step for step: a per-cell reference of the
+ * rule, {@link BitGrid#smooth()} into fresh grids, and {@link BitGrid#smoothInto}
+ * swapping two grids back and forth, starting with a scratch grid full of
+ * unrelated bits.
+ */
+public final class SmoothingTest {
+    private static final int STEPS = 5;
+
+    private SmoothingTest() {
+    }
+
+    public static void main(String[] args) {
+        int[] widths = {1, 2, 3, 63, 64, 65, 80, 130};
+        int[] heights = {1, 2, 3, 21, 70};
+        long seed = 0x5300;
+        for (int width : widths) {
+            for (int height : heights) {
+                compare(width, height, seed++);
+            }
+        }
+        System.out.println("SmoothingTest: ok");
+    }
+
+    private static void compare(int width, int height, long seed) {
+        Random rng = new Random(seed);
+        boolean[][] reference = new boolean[height][width];
+        BitGrid fresh = new BitGrid(width, height, false);
+        BitGrid current = new BitGrid(width, height, false);
+        BitGrid scratch = new BitGrid(width, height, false);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                boolean wall = rng.nextDouble() < 0.45;
+                reference[y][x] = wall;
+                fresh.set(x, y, wall);
+                current.set(x, y, wall);
+                scratch.set(x, y, rng.nextBoolean());
+            }
+        }
+        for (int step = 1; step <= STEPS; step++) {
+            reference = smoothReference(reference);
+            fresh = fresh.smooth();
+            current.smoothInto(scratch);
+            BitGrid swap = current;
+            current = scratch;
+            scratch = swap;
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    String where = "(" + x + ", " + y + ") of " + width + "x" + height + " after step " + step;
+                    checkEquals(reference[y][x], fresh.isWall(x, y), "smooth() at " + where);
+                    checkEquals(reference[y][x], current.isWall(x, y), "smoothInto at " + where);
+                }
+            }
+        }
+    }
+
+    /**
+     * More than four walls among the eight neighbours makes a wall, fewer makes
+     * floor, exactly four keeps the cell; off-grid cells are walls.
+     */
+    private static boolean[][] smoothReference(boolean[][] cells) {
+        int height = cells.length;
+        int width = cells[0].length;
+        boolean[][] next = new boolean[height][width];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int walls = 0;
+                for (int dy = -1; dy <= 1; dy++) {
+                    for (int dx = -1; dx <= 1; dx++) {
+                        if (dx == 0 && dy == 0) {
+                            continue;
+                        }
+                        int nx = x + dx;
+                        int ny = y + dy;
+                        if (nx < 0 || ny < 0 || nx >= width || ny >= height || cells[ny][nx]) {
+                            walls++;
+                        }
+                    }
+                }
+                next[y][x] = walls > 4 || (walls == 4 && cells[y][x]);
+            }
+        }
+        return next;
+    }
+}
@@ -0,0 +1,83 @@
+package org.develz.crawl.tools;
+
+import static org.develz.crawl.tools.Checks.check;
+import static org.develz.crawl.tools.Checks.checkEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Speculative simulation (an attempt window of 1 and of 4) must give the same
+ * level, vaults and attempt count however many threads carry the windows out:
+ * on a fork-join pool of one thread, on a wider pool, and from outside any pool
+ * (the common pool). Uses the game's own source tree when it is present, where
+ * the first configuration vetoes its way through several windows, and the
+ * fixtures otherwise.
+ */
+public final class SpeculativeSimulationTest {
+    private static final Path GAME_ROOT = Paths.get("../..");
+    private static final int WIDE_POOL = Math.max(4, Runtime.getRuntime().availableProcessors());
+
+    private SpeculativeSimulationTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        boolean game = Files.isDirectory(GAME_ROOT.resolve("dat/des"));
+        Path root = game ? GAME_ROOT : Fixtures.SOURCE_ROOT;
+        DungeonMapSimulator simulator = new DungeonMapSimulator(VaultLibrary.load(root));
+        SimulationConfig.Builder[] configs = {
+            SimulationConfig.builder().branch("Elf").depth(7).seed(2).width(20).height(20),
+            SimulationConfig.builder().branch("Lair").depth(10).seed(3).width(20).height(20),
+            SimulationConfig.builder().branch("Vaults").depth(4).seed(1).width(20).height(20),
+            SimulationConfig.builder().depth(1).seed(0).width(40).height(30),
+        };
+        int mostAttempts = 0;
+        ForkJoinPool single = new ForkJoinPool(1);
+        ForkJoinPool wide = new ForkJoinPool(WIDE_POOL);
+        try {
+            for (SimulationConfig.Builder builder : configs) {
+                for (int window : new int[] {1, 4}) {
+                    SimulationConfig config = builder.sourceRoot(root).attemptWindow(window).build();
+                    String what = config.branch().orElse("D") + " " + config.width() + "x" + config.height()
+                            + " seed " + config.seed() + " window " + window;
+                    DungeonMapSimulator.SimulationResult expected = run(single, simulator, config);
+                    checkSame(expected, run(wide, simulator, config), what + " on " + WIDE_POOL + " threads");
+                    checkSame(expected, simulator.simulate(config), what + " on the common pool");
+                    checkSame(expected, run(single, simulator, config), what + " run again");
+                    mostAttempts = Math.max(mostAttempts, expected.attempts());
+                }
+            }
+        } finally {
+            single.shutdown();
+            wide.shutdown();
+        }
+        if (game) {
+            check(mostAttempts > 4, "some configuration needs more than one window of 4 attempts");
+        }
+        System.out.println("SpeculativeSimulationTest: ok");
+    }
+
+    private static DungeonMapSimulator.SimulationResult run(ForkJoinPool pool, DungeonMapSimulator simulator,
+                                                            SimulationConfig config) throws IOException {
+        try {
+            return pool.submit(() -> simulator.simulate(config)).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private static void checkSame(DungeonMapSimulator.SimulationResult expected,
+                                  DungeonMapSimulator.SimulationResult actual, String what) {
+        checkEquals(expected.source(), actual.source(), what + " layout and vaults");
+        checkEquals(expected.attempts(), actual.attempts(), what + " attempts");
+        check(Arrays.deepEquals(expected.tiles(), actual.tiles()), what + " tiles");
+    }
+}
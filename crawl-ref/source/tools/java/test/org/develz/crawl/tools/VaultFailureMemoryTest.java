@@ -0,0 +1,64 @@
+package org.develz.crawl.tools;
+
+import static org.develz.crawl.tools.Checks.check;
+import static org.develz.crawl.tools.Checks.checkEquals;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Vetoing a map must only exclude that map, not maps of other files that share
+ * its name: the fixtures hold fixture_basic and anonymous-1 in both sample.des
+ * and branch/second.des.
+ */
+public final class VaultFailureMemoryTest {
+    private static final String STYLE = "layout:test";
+
+    private VaultFailureMemoryTest() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        List<MapDefinition> maps = Fixtures.maps(false);
+        int[] weights = new int[maps.size()];
+        int[] chances = new int[maps.size()];
+        Arrays.fill(weights, MapDirectives.DEFAULT_WEIGHT);
+        Arrays.fill(chances, -1);
+        VaultPool pool = new VaultPool(maps, weights, chances);
+
+        VaultFailureMemory memory = new VaultFailureMemory();
+        List<MapDefinition> vetoed = new ArrayList<>();
+        for (MapDefinition map : maps) {
+            if (map.relativeSource().equals("sample.des")
+                    && (map.name().equals("fixture_basic") || map.name().equals("anonymous-1"))) {
+                vetoed.add(map);
+                memory.recordFailure(map.qualifiedName(), STYLE, 80, 70, true);
+            }
+        }
+        checkEquals(2, vetoed.size(), "vetoed sample.des maps");
+        Set<String> excluded = memory.excluded(STYLE, 80, 70);
+        checkEquals(2, excluded.size(), "excluded maps");
+        check(memory.excluded(STYLE, 80, 60).isEmpty(), "other level sizes are unaffected");
+
+        VaultPool filtered = pool.without(excluded);
+        checkEquals(maps.size() - vetoed.size(), filtered.maps().size(), "maps left in the pool");
+        for (MapDefinition map : maps) {
+            checkEquals(!vetoed.contains(map), filtered.maps().contains(map), "kept " + map.qualifiedName());
+        }
+        for (String name : List.of("fixture_basic", "anonymous-1")) {
+            check(filtered.maps().stream().anyMatch(map -> map.name().equals(name)
+                    && map.relativeSource().equals("branch/second.des")), "second.des still offers " + name);
+        }
+
+        for (int i = 1; i < VaultFailureMemory.PACKING_FAILURES; i++) {
+            memory.recordFailure(maps.get(0).qualifiedName(), STYLE, 80, 60, false);
+        }
+        check(memory.excluded(STYLE, 80, 60).isEmpty(), "packing failures below the threshold");
+        memory.recordFailure(maps.get(0).qualifiedName(), STYLE, 80, 60, false);
+        checkEquals(Set.of(maps.get(0).qualifiedName()), memory.excluded(STYLE, 80, 60),
+                "excluded after " + VaultFailureMemory.PACKING_FAILURES + " packing failures");
+        System.out.println("VaultFailureMemoryTest: ok");
+    }
+}
@@ -0,0 +1,53 @@
+package org.develz.crawl.tools;
+
+import static org.develz.crawl.tools.Checks.check;
+import static org.develz.crawl.tools.Checks.checkEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Eager and lazy loads sharing one configured cache path must not invalidate each
+ * other: after one load of each, neither parses anything again.
+ */
+public final class VaultLibraryCacheTest {
+    private VaultLibraryCacheTest() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        List<Path> desFiles = Fixtures.desFiles();
+        Path dir = Files.createTempDirectory("vault-cache");
+        Path cacheFile = dir.resolve("vaults.cache");
+        try {
+            List<MapDefinition> eager = load(cacheFile, desFiles, false, desFiles.size());
+            load(cacheFile, desFiles, true, desFiles.size());
+            List<MapDefinition> cachedEager = load(cacheFile, desFiles, false, 0);
+            List<MapDefinition> cachedLazy = load(cacheFile, desFiles, true, 0);
+            check(Files.exists(VaultLibraryCache.fileFor(cacheFile, true)), "lazy cache file written");
+            checkEquals(eager.size(), cachedEager.size(), "maps from the eager cache");
+            for (int i = 0; i < eager.size(); i++) {
+                checkEquals(eager.get(i).rows(), cachedEager.get(i).rows(), "eager cached rows of map " + i);
+                checkEquals(eager.get(i).rows(), cachedLazy.get(i).rows(), "lazy cached rows of map " + i);
+            }
+        } finally {
+            Fixtures.deleteTree(dir);
+        }
+        System.out.println("VaultLibraryCacheTest: ok");
+    }
+
+    private static List<MapDefinition> load(Path cacheFile, List<Path> desFiles, boolean lazy,
+                                            int expectedParses) throws IOException {
+        List<Path> parsed = new ArrayList<>();
+        RowInterner rowInterner = new RowInterner();
+        List<MapDefinition> maps = VaultLibraryCache.load(cacheFile, Fixtures.DES_ROOT, desFiles, lazy, rowInterner,
+                files -> {
+                    parsed.addAll(files);
+                    return VaultLibrary.parseDesFiles(Fixtures.DES_ROOT, files, lazy, rowInterner);
+                });
+        checkEquals(expectedParses, parsed.size(), (lazy ? "lazy" : "eager") + " load parses");
+        return maps;
+    }
+}
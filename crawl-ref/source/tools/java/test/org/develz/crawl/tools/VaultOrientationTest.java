@@ -0,0 +1,120 @@
+package org.develz.crawl.tools;
+
+import static org.develz.crawl.tools.Checks.check;
+import static org.develz.crawl.tools.Checks.checkEquals;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The eight {@link VaultOrientation}s on a small asymmetric map, the variants
+ * each combination of no_rotate, no_hmirror and no_vmirror leaves, and the
+ * ORIENT: side a turned vault lies against.
+ */
+public final class VaultOrientationTest {
+    private static final String[] MAP = {"abc", "def"};
+    /** The steps each variant needs: 1 for the quarter turn, 2 and 4 for the mirrors. */
+    private static final Map<VaultOrientation, Integer> STEPS = Map.of(
+            VaultOrientation.NORMAL, 0, VaultOrientation.HMIRROR, 2, VaultOrientation.VMIRROR, 4,
+            VaultOrientation.ROTATE_180, 6, VaultOrientation.ROTATE_90, 1, VaultOrientation.ROTATE_90_HMIRROR, 3,
+            VaultOrientation.ROTATE_90_VMIRROR, 5, VaultOrientation.ROTATE_270, 7);
+
+    private VaultOrientationTest() {
+    }
+
+    public static void main(String[] args) {
+        Map<VaultOrientation, String[]> expected = new EnumMap<>(VaultOrientation.class);
+        expected.put(VaultOrientation.NORMAL, new String[] {"abc", "def"});
+        expected.put(VaultOrientation.HMIRROR, new String[] {"cba", "fed"});
+        expected.put(VaultOrientation.VMIRROR, new String[] {"def", "abc"});
+        expected.put(VaultOrientation.ROTATE_180, new String[] {"fed", "cba"});
+        expected.put(VaultOrientation.ROTATE_90, new String[] {"da", "eb", "fc"});
+        expected.put(VaultOrientation.ROTATE_90_HMIRROR, new String[] {"ad", "be", "cf"});
+        expected.put(VaultOrientation.ROTATE_90_VMIRROR, new String[] {"fc", "eb", "da"});
+        expected.put(VaultOrientation.ROTATE_270, new String[] {"cf", "be", "ad"});
+        for (VaultOrientation orientation : VaultOrientation.values()) {
+            char[][] tiles = tiles(MAP);
+            char[][] turned = orientation.apply(tiles, MAP[0].length());
+            String[] want = expected.get(orientation);
+            checkEquals(want.length, turned.length, orientation + " height");
+            for (int y = 0; y < want.length; y++) {
+                checkEquals(want[y], new String(turned[y]), orientation + " row " + y);
+            }
+            checkEquals(orientation.rotates() ? 3 : 2, turned.length, orientation + " rotates()");
+            for (int y = 0; y < MAP.length; y++) {
+                checkEquals(MAP[y], new String(tiles[y]), orientation + " leaves its input alone");
+            }
+            checkSides(orientation, turned);
+        }
+
+        String[] tags = {"no_rotate", "no_hmirror", "no_vmirror"};
+        for (int forbidden = 0; forbidden < 8; forbidden++) {
+            List<String> mapTags = new ArrayList<>();
+            for (int step = 0; step < 3; step++) {
+                if ((forbidden & (1 << step)) != 0) {
+                    mapTags.add(tags[step]);
+                }
+            }
+            MapDirectives directives = MapDirectives.of(DepthRanges.NONE, null, null, mapTags, null);
+            List<VaultOrientation> want = new ArrayList<>();
+            for (VaultOrientation orientation : VaultOrientation.values()) {
+                if ((STEPS.get(orientation) & forbidden) == 0) {
+                    want.add(orientation);
+                }
+            }
+            List<VaultOrientation> allowed = VaultOrientation.allowedFor(directives);
+            checkEquals(want, allowed, "allowed with " + mapTags);
+            checkEquals(VaultOrientation.NORMAL, allowed.get(0), "first allowed with " + mapTags);
+        }
+        checkEquals(List.of(VaultOrientation.NORMAL), VaultOrientation.allowedFor(MapDirectives.of(
+                DepthRanges.NONE, null, null, List.of(tags), null)), "allowed with all three tags");
+        checkEquals(8, VaultOrientation.allowedFor(MapDirectives.NONE).size(), "allowed without tags");
+        System.out.println("VaultOrientationTest: ok");
+    }
+
+    /**
+     * Every cell on the side of the original map an ORIENT: faces must end up on
+     * the side {@link VaultOrientation#apply(MapDirectives.Orient)} names.
+     */
+    private static void checkSides(VaultOrientation orientation, char[][] turned) {
+        for (MapDirectives.Orient orient : MapDirectives.Orient.values()) {
+            MapDirectives.Orient moved = orientation.apply(orient);
+            if (!orient.directional()) {
+                checkEquals(orient, moved, orientation + " keeps " + orient);
+                continue;
+            }
+            Set<Character> before = onSide(tiles(MAP), orient);
+            Set<Character> after = onSide(turned, moved);
+            checkEquals(before, after, orientation + " turns " + orient + " to " + moved);
+            check(!before.isEmpty(), orient + " side is not empty");
+        }
+    }
+
+    private static Set<Character> onSide(char[][] tiles, MapDirectives.Orient orient) {
+        Set<Character> cells = new HashSet<>();
+        int height = tiles.length;
+        int width = tiles[0].length;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                boolean column = orient.dx() == 0 || x == (orient.dx() < 0 ? 0 : width - 1);
+                boolean row = orient.dy() == 0 || y == (orient.dy() < 0 ? 0 : height - 1);
+                if (column && row) {
+                    cells.add(tiles[y][x]);
+                }
+            }
+        }
+        return cells;
+    }
+
+    private static char[][] tiles(String[] rows) {
+        char[][] tiles = new char[rows.length][];
+        for (int y = 0; y < rows.length; y++) {
+            tiles[y] = rows[y].toCharArray();
+        }
+        return tiles;
+    }
+}
@@ -0,0 +1,86 @@
+package org.develz.crawl.tools;
+
+import static org.develz.crawl.tools.Checks.check;
+import static org.develz.crawl.tools.Checks.checkEquals;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * {@link VaultPool#draw} over the fixture maps: never the same vault twice, CHANCE:
+ * maps by their roll alone, and a short draw, not a longer loop, when the weights
+ * are too skewed for the rejection cap.
+ */
+public final class VaultPoolTest {
+    private VaultPoolTest() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        List<MapDefinition> maps = Fixtures.maps(false);
+        check(maps.size() >= 6, "enough fixture maps");
+        distinct(maps);
+        chances(maps);
+        shortDraw(maps);
+        System.out.println("VaultPoolTest: ok");
+    }
+
+    private static void distinct(List<MapDefinition> maps) {
+        int[] weights = new int[maps.size()];
+        int[] chances = new int[maps.size()];
+        for (int i = 0; i < maps.size(); i++) {
+            weights[i] = 10 + i;
+            chances[i] = -1;
+        }
+        weights[1] = 0;
+        VaultPool pool = new VaultPool(maps, weights, chances);
+        Random rng = new Random(0xD4A3);
+        for (int round = 0; round < 2000; round++) {
+            int count = 1 + round % (maps.size() + 2);
+            List<MapDefinition> drawn = pool.draw(count, rng);
+            checkEquals(Math.min(count, maps.size() - 1), drawn.size(), "vaults drawn for " + count);
+            checkEquals(drawn.size(), new HashSet<>(drawn).size(), "distinct vaults in draw " + round);
+            check(!drawn.contains(maps.get(1)), "a zero-weight vault is never drawn");
+        }
+    }
+
+    private static void chances(List<MapDefinition> maps) {
+        int[] weights = new int[maps.size()];
+        int[] chances = new int[maps.size()];
+        for (int i = 0; i < maps.size(); i++) {
+            weights[i] = 10;
+            chances[i] = -1;
+        }
+        chances[0] = MapDirectives.CHANCE_SCALE;
+        chances[2] = 0;
+        VaultPool pool = new VaultPool(maps, weights, chances);
+        Random rng = new Random(0xC4A);
+        for (int round = 0; round < 500; round++) {
+            List<MapDefinition> drawn = pool.draw(3, rng);
+            checkEquals(maps.get(0), drawn.get(0), "a certain CHANCE: map comes first");
+            check(!drawn.contains(maps.get(2)), "a zero CHANCE: map is never drawn");
+            checkEquals(3, drawn.size(), "vaults drawn");
+        }
+        checkEquals(List.of(maps.get(0)), pool.draw(1, rng), "the roll fills a draw of one");
+    }
+
+    private static void shortDraw(List<MapDefinition> maps) {
+        List<MapDefinition> two = new ArrayList<>(maps.subList(0, 2));
+        VaultPool pool = new VaultPool(two, new int[] {Integer.MAX_VALUE, 1}, new int[] {-1, -1});
+        Random rng = new Random(0x5407);
+        int shortDraws = 0;
+        for (int round = 0; round < 100; round++) {
+            List<MapDefinition> drawn = pool.draw(2, rng);
+            check(!drawn.isEmpty() && drawn.size() <= 2, "draw " + round + " holds 1 or 2 vaults");
+            checkEquals(maps.get(0), drawn.get(0), "the heavy vault is drawn first");
+            if (drawn.size() < 2) {
+                shortDraws++;
+            }
+        }
+        // The light vault is hit about once in 2^31 samples, so with a cap of
+        // DRAW_ATTEMPTS_PER_VAULT * 2 samples every draw comes back short.
+        checkEquals(100, shortDraws, "draws cut short by the rejection cap");
+    }
+}
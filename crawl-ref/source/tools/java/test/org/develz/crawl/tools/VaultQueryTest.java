@@ -0,0 +1,170 @@
+package org.develz.crawl.tools;
+
+import static org.develz.crawl.tools.Checks.check;
+import static org.develz.crawl.tools.Checks.checkEquals;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Tag, branch, size and depth queries over the fixture library, each checked
+ * against a plain linear filter over the maps' tag names, place hints, sizes
+ * and DEPTH: ranges. Filler tags are interned first so that the fixture tags
+ * sit beyond the first word of the tag bitsets.
+ */
+public final class VaultQueryTest {
+    private VaultQueryTest() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        for (int i = 0; i < 70; i++) {
+            TagBits.intern("vault_query_test_filler_" + i);
+        }
+        checkSetOperations();
+
+        VaultLibrary library = VaultLibrary.load(Fixtures.SOURCE_ROOT);
+        List<MapDefinition> maps = library.maps();
+        Case[] cases = {
+            new Case().with("transparent"),
+            new Case().with("transparent").without("no_monster_gen"),
+            new Case().with("transparent", "no_monster_gen"),
+            new Case().without("transparent", "no_rotate"),
+            new Case().with("tags_fixture_only", "allow_dup"),
+            new Case().with("no_such_tag"),
+            new Case().without("no_such_tag").fitting(3, 3),
+            new Case().with("no_monster_gen").fitting(10, 1),
+            new Case().with("transparent").branch("lair"),
+            new Case().without("no_monster_gen").depth(2),
+            new Case().with("transparent").branch("Lair").depth(2),
+            new Case().without("transparent").depth(4).fitting(5, 5),
+        };
+        int nonEmpty = 0;
+        for (Case query : cases) {
+            BitSet expected = new BitSet();
+            for (int id = 0; id < maps.size(); id++) {
+                if (query.matches(maps.get(id))) {
+                    expected.set(id);
+                }
+            }
+            BitSet actual = query.applyTo(library.query()).ids();
+            checkEquals(expected, actual, query + " ids");
+            checkEquals(expected.cardinality(), query.applyTo(library.query()).count(), query + " count");
+            nonEmpty += expected.isEmpty() ? 0 : 1;
+        }
+        checkEquals(cases.length - 1, nonEmpty, "queries matching something");
+
+        // The later call decides a tag that is both required and excluded.
+        BitSet excludedLast = library.query().withTags("transparent").withoutTags("transparent").ids();
+        checkEquals(new Case().without("transparent").applyTo(library.query()).ids(), excludedLast,
+                "withTags then withoutTags");
+        BitSet requiredLast = library.query().withoutTags("transparent").withTags("transparent").ids();
+        checkEquals(new Case().with("transparent").applyTo(library.query()).ids(), requiredLast,
+                "withoutTags then withTags");
+
+        List<MapDefinition> matches = library.query().withTags("transparent").withoutTags("no_monster_gen").maps();
+        checkEquals(List.of("fixture_basic", "tags_transparent_small", "tags_many"),
+                matches.stream().map(MapDefinition::name).collect(Collectors.toList()),
+                "transparent maps without no_monster_gen");
+        System.out.println("VaultQueryTest: ok");
+    }
+
+    private static void checkSetOperations() {
+        long[] low = {0b0110L};
+        long[] wide = {0b0100L, 1L};
+        check(TagBits.containsAll(low, new long[] {0b0100L}), "containsAll of a subset");
+        check(!TagBits.containsAll(low, wide), "containsAll of a longer set");
+        check(TagBits.containsAll(low, new long[] {0b0010L, 0}), "containsAll ignores empty trailing words");
+        check(TagBits.intersects(low, wide), "intersects in the shared word");
+        check(!TagBits.intersects(new long[] {0b0001L}, wide), "disjoint sets");
+        checkEquals(Arrays.toString(new long[] {0b0110L, 1L}), Arrays.toString(TagBits.or(low, wide)), "or");
+        checkEquals(Arrays.toString(new long[] {0b0010L}), Arrays.toString(TagBits.andNot(low, wide)), "andNot");
+        checkEquals(Arrays.toString(new long[] {0, 1L}), Arrays.toString(TagBits.andNot(wide, low)),
+                "andNot keeps words beyond the other set");
+        checkEquals(0b0110L, low[0], "operands are not modified");
+    }
+
+    /**
+     * One query, applied both through {@link VaultQuery} and as a linear filter.
+     */
+    private static final class Case {
+        private List<String> required = List.of();
+        private List<String> excluded = List.of();
+        private String branch;
+        private int depth;
+        private int maxWidth = -1;
+        private int maxHeight = -1;
+
+        Case with(String... tags) {
+            required = List.of(tags);
+            return this;
+        }
+
+        Case without(String... tags) {
+            excluded = List.of(tags);
+            return this;
+        }
+
+        Case branch(String branch) {
+            this.branch = branch;
+            return this;
+        }
+
+        Case depth(int depth) {
+            this.depth = depth;
+            return this;
+        }
+
+        Case fitting(int width, int height) {
+            this.maxWidth = width;
+            this.maxHeight = height;
+            return this;
+        }
+
+        VaultQuery applyTo(VaultQuery query) {
+            query.withTags(required.toArray(new String[0])).withoutTags(excluded.toArray(new String[0]));
+            if (branch != null) {
+                query.branch(branch);
+            }
+            if (depth > 0) {
+                query.depth(depth);
+            }
+            if (maxWidth >= 0) {
+                query.fitting(maxWidth, maxHeight);
+            }
+            return query;
+        }
+
+        boolean matches(MapDefinition map) {
+            List<String> tags = map.directives().tags();
+            if (!tags.containsAll(required) || excluded.stream().anyMatch(tags::contains)) {
+                return false;
+            }
+            if (branch != null && !placeable(map, branch)) {
+                return false;
+            }
+            if (depth > 0 && map.directives().hasDepths()) {
+                String levelBranch = branch != null ? branch.toUpperCase() : DepthRanges.DEFAULT_BRANCH;
+                if (!map.directives().depths().matches(levelBranch, DepthIndex.level(levelBranch, depth))) {
+                    return false;
+                }
+            }
+            return maxWidth < 0
+                    || map.width() > 0 && map.height() > 0 && map.width() <= maxWidth && map.height() <= maxHeight;
+        }
+
+        private static boolean placeable(MapDefinition map, String branch) {
+            String source = map.relativeSource().toLowerCase();
+            return map.placeHints().stream().anyMatch(branch::equalsIgnoreCase)
+                    || source.contains("branches/") && source.contains(branch.toLowerCase());
+        }
+
+        @Override
+        public String toString() {
+            return "with " + required + " without " + excluded + " branch " + branch + " depth " + depth
+                    + " fitting " + maxWidth + "x" + maxHeight;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package org.develz.crawl.tools;
+
+import static org.develz.crawl.tools.Checks.check;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * The Vector API kernel must smooth interior words to exactly the bits the
+ * scalar kernel does, for row lengths that leave every possible remainder of
+ * words after the full vectors, and for row ranges starting and ending anywhere.
+ * Skipped when the vector source set or the incubator module is not available
+ * (see run-tests.sh).
+ */
+public final class VectorKernelTest {
+    private VectorKernelTest() {
+    }
+
+    public static void main(String[] args) throws ReflectiveOperationException {
+        BitGrid.InteriorKernel vector;
+        try {
+            vector = (BitGrid.InteriorKernel) Class.forName(BitGrid.VECTOR_KERNEL)
+                    .getDeclaredConstructor().newInstance();
+        } catch (ClassNotFoundException | LinkageError | InvocationTargetException unavailable) {
+            System.out.println("VectorKernelTest: skipped, vector kernel unavailable (" + unavailable + ")");
+            return;
+        }
+        Random rng = new Random(0x7EC7);
+        for (int stride = 1; stride <= 40; stride++) {
+            for (int height : new int[] {3, 4, 9}) {
+                for (int round = 0; round < 4; round++) {
+                    long[] words = new long[stride * height];
+                    for (int i = 0; i < words.length; i++) {
+                        words[i] = round == 0 ? -1L : round == 1 ? 0L : rng.nextLong();
+                    }
+                    int fromRow = 1 + rng.nextInt(height - 2);
+                    int toRow = fromRow + 1 + rng.nextInt(height - 1 - fromRow);
+                    long[] expected = new long[words.length];
+                    long[] actual = new long[words.length];
+                    long fill = rng.nextLong();
+                    Arrays.fill(expected, fill);
+                    Arrays.fill(actual, fill);
+                    BitGrid.SCALAR_KERNEL.smooth(words, expected, stride, fromRow, toRow);
+                    vector.smooth(words, actual, stride, fromRow, toRow);
+                    check(Arrays.equals(expected, actual), "vector kernel differs from scalar at stride " + stride
+                            + ", height " + height + ", rows [" + fromRow + ", " + toRow + "), round " + round);
+                }
+            }
+        }
+        System.out.println("VectorKernelTest: ok");
+    }
+}
@@ -0,0 +1,95 @@
+package org.develz.crawl.tools;
+
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * {@link BitGrid} interior smoothing on the incubating Vector API: the same
+ * carry-save adder tree as the scalar kernel, applied to as many words of a row
+ * as the preferred vector shape holds. Words left over at the end of a row go
+ * through the scalar kernel.
+ *
+ * This source set is kept apart from the rest of the tools so that they build
+ * without the incubator module. It is compiled against them on its own:
+ *
+ * <pre>
+ * javac --add-modules jdk.incubator.vector -cp &lt;tools classes&gt; -d &lt;out&gt; \
+ *         vector/org/develz/crawl/tools/*.java
+ * </pre>
+ *
+ * and only used when its classes are on the class path and the JVM runs with
+ * {@code --add-modules jdk.incubator.vector}; {@link BitGrid} loads it
+ * reflectively and falls back to the scalar kernel otherwise.
+ */
+final class BitGridVectorKernel implements BitGrid.InteriorKernel {
+    private static final VectorSpecies<Long> SPECIES = LongVector.SPECIES_PREFERRED;
+
+    BitGridVectorKernel() {
+        if (SPECIES.length() < 2) {
+            throw new UnsupportedOperationException("no vector shape wider than one long");
+        }
+    }
+
+    @Override
+    public void smooth(long[] words, long[] out, int stride, int fromRow, int toRow) {
+        int lanes = SPECIES.length();
+        for (int y = fromRow; y < toRow; y++) {
+            int centre = y * stride;
+            int north = centre - stride;
+            int south = centre + stride;
+            int i = 1;
+            for (; i + lanes <= stride - 1; i += lanes) {
+                LongVector northWord = LongVector.fromArray(SPECIES, words, north + i);
+                LongVector centreWord = LongVector.fromArray(SPECIES, words, centre + i);
+                LongVector southWord = LongVector.fromArray(SPECIES, words, south + i);
+                rule(west(words, north + i, northWord), northWord, east(words, north + i, northWord),
+                        west(words, centre + i, centreWord), centreWord, east(words, centre + i, centreWord),
+                        west(words, south + i, southWord), southWord, east(words, south + i, southWord))
+                        .intoArray(out, centre + i);
+            }
+            BitGrid.smoothInteriorRange(words, out, stride, y, i, stride - 1);
+        }
+    }
+
+    private static LongVector west(long[] words, int index, LongVector word) {
+        return word.lanewise(VectorOperators.LSHL, 1)
+                .or(LongVector.fromArray(SPECIES, words, index - 1).lanewise(VectorOperators.LSHR, 63));
+    }
+
+    private static LongVector east(long[] words, int index, LongVector word) {
+        return word.lanewise(VectorOperators.LSHR, 1)
+                .or(LongVector.fromArray(SPECIES, words, index + 1).lanewise(VectorOperators.LSHL, 63));
+    }
+
+    private static LongVector rule(LongVector northWest, LongVector north, LongVector northEast,
+                                   LongVector westward, LongVector centre, LongVector eastward,
+                                   LongVector southWest, LongVector south, LongVector southEast) {
+        LongVector sumA = xor(xor(northWest, north), northEast);
+        LongVector carryA = majority(northWest, north, northEast);
+        LongVector sumB = xor(xor(westward, eastward), southWest);
+        LongVector carryB = majority(westward, eastward, southWest);
+        LongVector sumC = xor(south, southEast);
+        LongVector carryC = south.and(southEast);
+        LongVector ones = xor(xor(sumA, sumB), sumC);
+        LongVector carryOnes = majority(sumA, sumB, sumC);
+        LongVector sumTwos = xor(xor(carryA, carryB), carryC);
+        LongVector carryTwos = majority(carryA, carryB, carryC);
+        LongVector twos = xor(sumTwos, carryOnes);
+        LongVector carryFours = sumTwos.and(carryOnes);
+        LongVector fours = xor(carryTwos, carryFours);
+        LongVector eights = carryTwos.and(carryFours);
+
+        LongVector more = eights.or(fours.and(twos.or(ones)));
+        LongVector exactlyFour = fours.and(twos.or(ones).not());
+        return more.or(exactlyFour.and(centre));
+    }
+
+    private static LongVector majority(LongVector a, LongVector b, LongVector c) {
+        return a.and(b).or(c.and(xor(a, b)));
+    }
+
+    private static LongVector xor(LongVector a, LongVector b) {
+        return a.lanewise(VectorOperators.XOR, b);
+    }
+}